@@ -0,0 +1,55 @@
+package com.lfyt.mobile.android.webservice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+/**
+ * Decode of a response body through the GsonConverterFactory of the default configuration,
+ * dates included, by number of items
+ */
+@State(Scope.Benchmark)
+public class GsonDecodeBenchmark {
+	
+	private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+	
+	
+	@Param({"1", "100", "1000"})
+	public int items;
+	
+	
+	private byte[] body;
+	private Converter<ResponseBody, ?> converter;
+	
+	
+	@Setup
+	public void setup() {
+		WebServiceConfiguration configuration = new WebServiceConfiguration();
+		
+		Retrofit retrofit = new Retrofit.Builder()
+				.baseUrl("http://localhost/")
+				.addConverterFactory(configuration.getGsonConverterFactory())
+				.build();
+		
+		converter = configuration.getGsonConverterFactory()
+				.responseBodyConverter(Payloads.ItemsResponse.class, new Annotation[0], retrofit);
+		body = Payloads.items(items).getBytes();
+	}
+	
+	
+	@Benchmark
+	public Object decode() throws IOException {
+		return converter.convert(ResponseBody.create(JSON, body));
+	}
+	
+}
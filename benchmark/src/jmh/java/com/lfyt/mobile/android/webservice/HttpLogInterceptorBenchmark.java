@@ -0,0 +1,102 @@
+package com.lfyt.mobile.android.webservice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Full exchange against a local MockWebServer through the HttpLogInterceptor at every level,
+ * DISABLE is the baseline of the other levels
+ */
+@State(Scope.Benchmark)
+public class HttpLogInterceptorBenchmark {
+	
+	private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+	
+	
+	@Param({"DISABLE", "URL_ONLY", "BODY_ONLY", "HEADERS_ONLY", "BODY_AND_HEADERS"})
+	public HttpLogInterceptor.Level level;
+	
+	@Param({"1024"})
+	public int bodySize;
+	
+	
+	private MockWebServer server;
+	private OkHttpClient client;
+	private Request request;
+	
+	
+	@Setup
+	public void setup() throws IOException {
+		final String body = Payloads.json(bodySize);
+		
+		//MockWebServer logs every request
+		Logger.getLogger(MockWebServer.class.getName()).setLevel(Level.WARNING);
+		
+		server = new MockWebServer();
+		server.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest recordedRequest) {
+				return new MockResponse()
+						.setHeader("Content-Type", JSON.toString())
+						.setBody(body);
+			}
+		});
+		server.start();
+		
+		HttpLogInterceptor logInterceptor = new HttpLogInterceptor(new HttpLogInterceptor.Logger() {
+			@Override
+			public void log(String message) {
+			}
+		});
+		logInterceptor.setLevel(level);
+		
+		client = new OkHttpClient.Builder()
+				.addInterceptor(logInterceptor)
+				.readTimeout(10, TimeUnit.SECONDS)
+				.build();
+		
+		request = new Request.Builder()
+				.url(server.url("/items"))
+				.post(RequestBody.create(JSON, body))
+				.build();
+	}
+	
+	
+	@TearDown
+	public void tearDown() throws IOException {
+		client.dispatcher().executorService().shutdown();
+		client.connectionPool().evictAll();
+		server.shutdown();
+	}
+	
+	
+	@Benchmark
+	public String intercept() throws IOException {
+		Response response = client.newCall(request).execute();
+		try {
+			return response.body().string();
+		} finally {
+			response.close();
+		}
+	}
+	
+}
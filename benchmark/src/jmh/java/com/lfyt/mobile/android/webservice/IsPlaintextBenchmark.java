@@ -0,0 +1,47 @@
+package com.lfyt.mobile.android.webservice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import okio.Buffer;
+
+/**
+ * Plaintext detection of logged bodies, text and binary, by body size
+ */
+@State(Scope.Benchmark)
+public class IsPlaintextBenchmark {
+	
+	@Param({"16", "1024", "65536"})
+	public int bodySize;
+	
+	
+	private Buffer text;
+	private Buffer binary;
+	
+	
+	@Setup
+	public void setup() {
+		text = new Buffer().writeUtf8(Payloads.json(bodySize));
+		
+		binary = new Buffer();
+		for (int i = 0; i < bodySize; i++) {
+			binary.writeByte(i);
+		}
+	}
+	
+	
+	@Benchmark
+	public boolean text() {
+		return HttpLogInterceptor.isPlaintext(text);
+	}
+	
+	
+	@Benchmark
+	public boolean binary() {
+		return HttpLogInterceptor.isPlaintext(binary);
+	}
+	
+}
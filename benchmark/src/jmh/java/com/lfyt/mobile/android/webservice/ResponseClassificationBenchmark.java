@@ -0,0 +1,153 @@
+package com.lfyt.mobile.android.webservice;
+
+import com.google.gson.JsonSyntaxException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.EnumSet;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * onResponse/onFailure classification of a model and the events it posts, by outcome.
+ * Lifecycle events can be turned off to compare with the models that opt out of them
+ */
+@State(Scope.Benchmark)
+public class ResponseClassificationBenchmark {
+	
+	@Param({"200", "404", "503", "ConnectException", "SocketTimeoutException", "JsonSyntaxException"})
+	public String outcome;
+	
+	@Param({"true", "false"})
+	public boolean lifecycleEvents;
+	
+	
+	private BenchmarkStateAPI stateAPI;
+	private BenchmarkModel model;
+	private Call<Payloads.ItemsResponse> call;
+	private Response<Payloads.ItemsResponse> response;
+	private Throwable error;
+	private String host;
+	
+	
+	@Setup
+	public void setup() {
+		stateAPI = new BenchmarkStateAPI();
+		model = new BenchmarkModel(stateAPI);
+		if( !lifecycleEvents ){
+			model.lifecycleEvents = EnumSet.noneOf(WebServiceModel.LifecycleEvent.class);
+		}
+		
+		call = new StubCall(new Request.Builder().url("http://localhost/items").build());
+		host = call.request().url().host();
+		
+		if( Character.isDigit(outcome.charAt(0)) ){
+			int code = Integer.parseInt(outcome);
+			response = code < 300
+					? Response.success(new Payloads.ItemsResponse())
+					: Response.<Payloads.ItemsResponse>error(code, ResponseBody.create(MediaType.parse("application/json"), "{}"));
+		}
+		else if( outcome.equals("ConnectException") ){
+			error = new ConnectException("Failed to connect");
+		}
+		else if( outcome.equals("SocketTimeoutException") ){
+			error = new SocketTimeoutException("timeout");
+		}
+		else{
+			error = new JsonSyntaxException("Expected BEGIN_OBJECT");
+		}
+	}
+	
+	
+	@Benchmark
+	public int classify() {
+		//Keep the in flight counters balanced, the model decrements them on every outcome
+		stateAPI.onRequestExecuted(host, BenchmarkModel.class);
+		
+		if( response != null ){
+			model.onResponse(call, response);
+		}
+		else{
+			model.onFailure(call, error);
+		}
+		return stateAPI.getExecutingRequests();
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// STUBS
+	///////////////////////////////////////////////////////////////////////////
+	
+	static final class BenchmarkStateAPI extends WebServiceStateAPI {
+	}
+	
+	
+	static final class BenchmarkModel extends WebServiceModel<Payloads.ItemsResponse> {
+		
+		BenchmarkModel(WebServiceStateAPI stateAPI) {
+			super(stateAPI);
+		}
+	}
+	
+	
+	/**
+	 * Call that is never executed, only its request is read by the model
+	 */
+	static final class StubCall implements Call<Payloads.ItemsResponse> {
+		
+		private final Request request;
+		
+		StubCall(Request request) {
+			this.request = request;
+		}
+		
+		@Override
+		public Response<Payloads.ItemsResponse> execute() throws IOException {
+			throw new UnsupportedOperationException();
+		}
+		
+		@Override
+		public void enqueue(Callback<Payloads.ItemsResponse> callback) {
+			throw new UnsupportedOperationException();
+		}
+		
+		@Override
+		public boolean isExecuted() {
+			return true;
+		}
+		
+		@Override
+		public void cancel() {
+		}
+		
+		@Override
+		public boolean isCanceled() {
+			return false;
+		}
+		
+		@Override
+		public Call<Payloads.ItemsResponse> clone() {
+			return new StubCall(request);
+		}
+		
+		@Override
+		public Request request() {
+			return request;
+		}
+	}
+	
+}
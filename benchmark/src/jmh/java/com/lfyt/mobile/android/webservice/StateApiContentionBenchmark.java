@@ -0,0 +1,44 @@
+package com.lfyt.mobile.android.webservice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * In flight counters of the WebServiceStateAPI updated by many threads at once, every thread
+ * executes and finishes a request so the counters move around zero and post events
+ */
+@State(Scope.Benchmark)
+public class StateApiContentionBenchmark {
+	
+	private final ResponseClassificationBenchmark.BenchmarkStateAPI stateAPI = new ResponseClassificationBenchmark.BenchmarkStateAPI();
+	
+	
+	@Benchmark
+	@Threads(1)
+	public void singleThread() {
+		request();
+	}
+	
+	
+	@Benchmark
+	@Threads(8)
+	public void eightThreads() {
+		request();
+	}
+	
+	
+	@Benchmark
+	@Threads(Threads.MAX)
+	public void maxThreads() {
+		request();
+	}
+	
+	
+	private void request() {
+		stateAPI.onRequestExecuted("localhost", StateApiContentionBenchmark.class);
+		stateAPI.onRequestResponse("localhost", StateApiContentionBenchmark.class);
+	}
+	
+}
@@ -0,0 +1,71 @@
+package com.lfyt.mobile.android.webservice;
+
+import retrofit2.Call;
+import retrofit2.Response;
+import retrofit2.http.GET;
+
+/**
+ * Model that requests the items of the load test server in a closed loop: the next request is
+ * executed when the response of the previous one is handled
+ */
+final class LoadClient extends WebServiceModel<Payloads.ItemsResponse> {
+	
+	
+	interface ItemsService {
+		
+		@GET("items")
+		Call<Payloads.ItemsResponse> items();
+	}
+	
+	
+	private final LoadTest.Run run;
+	private final ItemsService service;
+	
+	private volatile long startNanos;
+	
+	
+	LoadClient(WebServiceStateAPI stateAPI, WebServiceComponent component, HttpLogInterceptor.Level logLevel, LoadTest.Run run) {
+		super(stateAPI);
+		this.logLevel = logLevel;
+		this.run = run;
+		service = setupWebService(component, ItemsService.class);
+	}
+	
+	
+	/**
+	 * Stateless client, every instance uses the same service
+	 */
+	@Override
+	protected String provideWebServiceKey(Class<?> service) {
+		return sharedWebServiceKey(service);
+	}
+	
+	
+	void next() {
+		if( !run.isRunning() ){
+			run.onClientStopped();
+			return;
+		}
+		startNanos = System.nanoTime();
+		executeRequest(service.items());
+	}
+	
+	
+	@Override
+	public void onResponse(Call<Payloads.ItemsResponse> call, Response<Payloads.ItemsResponse> response) {
+		long durationNanos = System.nanoTime() - startNanos;
+		super.onResponse(call, response);
+		run.record(durationNanos, response.isSuccessful());
+		next();
+	}
+	
+	
+	@Override
+	public void onFailure(Call<Payloads.ItemsResponse> call, Throwable error) {
+		long durationNanos = System.nanoTime() - startNanos;
+		super.onFailure(call, error);
+		run.recordFailure(durationNanos, error);
+		next();
+	}
+	
+}
@@ -0,0 +1,81 @@
+package com.lfyt.mobile.android.webservice;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outcomes and latency of the requests of a load test phase
+ */
+final class LoadStats {
+	
+	private final LatencyHistogram latency = new LatencyHistogram();
+	
+	private final AtomicLong successCount = new AtomicLong();
+	private final AtomicLong errorCount = new AtomicLong();
+	private final ConcurrentHashMap<String, AtomicLong> failures = new ConcurrentHashMap<>();
+	
+	
+	void record(long durationNanos, boolean success) {
+		latency.recordNanos(durationNanos);
+		(success ? successCount : errorCount).incrementAndGet();
+	}
+	
+	
+	void recordFailure(long durationNanos, Throwable error) {
+		latency.recordNanos(durationNanos);
+		
+		String name = error.getClass().getSimpleName();
+		AtomicLong count = failures.get(name);
+		if( count == null ){
+			AtomicLong created = new AtomicLong();
+			count = failures.putIfAbsent(name, created);
+			if( count == null ){
+				count = created;
+			}
+		}
+		count.incrementAndGet();
+	}
+	
+	
+	long getRequestCount() {
+		long count = successCount.get() + errorCount.get();
+		for (AtomicLong failure : failures.values()) {
+			count += failure.get();
+		}
+		return count;
+	}
+	
+	
+	long getSuccessCount() {
+		return successCount.get();
+	}
+	
+	
+	/**
+	 * Responses with a non 2xx code
+	 */
+	long getErrorCount() {
+		return errorCount.get();
+	}
+	
+	
+	/**
+	 * Requests that ended without a response, by exception
+	 */
+	Map<String, Long> getFailures() {
+		Map<String, Long> snapshot = new HashMap<>();
+		for (Map.Entry<String, AtomicLong> entry : failures.entrySet()) {
+			snapshot.put(entry.getKey(), entry.getValue().get());
+		}
+		return Collections.unmodifiableMap(snapshot);
+	}
+	
+	
+	LatencyHistogram.Snapshot getLatency() {
+		return latency.snapshot();
+	}
+	
+}
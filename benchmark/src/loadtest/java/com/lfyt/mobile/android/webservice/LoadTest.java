@@ -0,0 +1,618 @@
+package com.lfyt.mobile.android.webservice;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ServerSocketFactory;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Command line load generator.
+ *
+ * Starts N LoadClient models sharing one WebServiceComponent against a local MockWebServer
+ * answering with the configured latency, error rate and payload sizes, then reports throughput,
+ * latency percentiles, connections and allocation rate of the measured phase.
+ *
+ * ./gradlew :benchmark:loadTest -Pargs="--clients=64 --duration=30 --connections=5"
+ */
+public class LoadTest {
+	
+	
+	public static void main(String[] args) throws Exception {
+		Options options;
+		try {
+			options = Options.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(Options.USAGE);
+			System.exit(2);
+			return;
+		}
+		if( options == null ){
+			System.out.println(Options.USAGE);
+			return;
+		}
+		
+		new LoadTest(options).run();
+		System.exit(0);
+	}
+	
+	
+	private final Options options;
+	
+	private MockWebServer server;
+	private ProfileDispatcher serverDispatcher;
+	private WebServiceConfiguration configuration;
+	private LoadStateAPI stateAPI;
+	
+	private final Peaks peaks = new Peaks();
+	
+	
+	LoadTest(Options options) {
+		this.options = options;
+	}
+	
+	
+	void run() throws IOException, InterruptedException {
+		startServer();
+		setupConfiguration();
+		
+		WebServiceComponent component = new WebServiceComponent(server.url("/").toString(), configuration);
+		stateAPI = new LoadStateAPI();
+		
+		Run run = new Run(options.clients);
+		List<LoadClient> clients = new ArrayList<>();
+		for (int i = 0; i < options.clients; i++) {
+			clients.add(new LoadClient(stateAPI, component, options.logLevel, run));
+		}
+		
+		ScheduledExecutorService sampler = startSampler(run);
+		System.out.println(options);
+		
+		for (LoadClient client : clients) {
+			client.next();
+		}
+		
+		TimeUnit.SECONDS.sleep(options.warmupSeconds);
+		peaks.reset();
+		if( configuration.getConnectionPhaseMetrics() != null ){
+			configuration.getConnectionPhaseMetrics().reset();
+		}
+		long startNanos = System.nanoTime();
+		long startAllocatedBytes = allocatedBytes();
+		int startServerRequests = server.getRequestCount();
+		int startServerConnections = serverDispatcher.connections.get();
+		LoadStats stats = run.measure();
+		
+		TimeUnit.SECONDS.sleep(options.durationSeconds);
+		run.stop();
+		long elapsedNanos = System.nanoTime() - startNanos;
+		long allocatedBytes = allocatedBytes() - startAllocatedBytes;
+		int serverRequests = server.getRequestCount() - startServerRequests;
+		int serverConnections = serverDispatcher.connections.get() - startServerConnections;
+		
+		boolean drained = run.awaitClients(options.readTimeoutMs + 5000);
+		sampler.shutdownNow();
+		
+		report(stats, elapsedNanos, allocatedBytes, serverRequests, serverConnections, drained);
+		server.shutdown();
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// SETUP
+	///////////////////////////////////////////////////////////////////////////
+	
+	private void startServer() throws IOException {
+		//MockWebServer logs every request
+		Logger.getLogger(MockWebServer.class.getName()).setLevel(Level.WARNING);
+		
+		serverDispatcher = new ProfileDispatcher(options);
+		server = new MockWebServer();
+		server.setServerSocketFactory(new NoDelayServerSocketFactory());
+		server.setDispatcher(serverDispatcher);
+		server.start();
+	}
+	
+	
+	private void setupConfiguration() {
+		configuration = new WebServiceConfiguration();
+		configuration.setConnectionPool(new ConnectionPool(options.connections, options.keepAliveSeconds, TimeUnit.SECONDS));
+		
+		Dispatcher dispatcher = configuration.getDispatcher();
+		dispatcher.setMaxRequests(options.maxRequests);
+		dispatcher.setMaxRequestsPerHost(options.maxRequestsPerHost);
+		
+		//Reported with the latencies
+		configuration.setConnectionPhaseMetrics(new ConnectionPhaseMetrics());
+		
+		if( options.limiter ){
+			configuration.setConcurrencyLimiter(new ConcurrencyLimiter());
+		}
+	}
+	
+	
+	private ScheduledExecutorService startSampler(final Run run) {
+		ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "LoadTest-Sampler");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		
+		final long startNanos = System.nanoTime();
+		sampler.scheduleAtFixedRate(new Runnable() {
+			
+			private int samples;
+			private long lastRequests;
+			
+			@Override
+			public void run() {
+				ConnectionPool pool = configuration.getConnectionPool();
+				Dispatcher dispatcher = configuration.getDispatcher();
+				peaks.sample(pool.connectionCount(), dispatcher.runningCallsCount(), dispatcher.queuedCallsCount());
+				
+				if( ++samples % 10 != 0 ){
+					return;
+				}
+				
+				long requests = run.getRequestCount();
+				System.out.println(String.format(Locale.US, "%4ds %s %7d req/s  pool=%d idle=%d  running=%d queued=%d",
+						TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos),
+						run.isMeasuring() ? "measure" : "warm-up",
+						requests - lastRequests,
+						pool.connectionCount(), pool.idleConnectionCount(),
+						dispatcher.runningCallsCount(), dispatcher.queuedCallsCount()));
+				lastRequests = requests;
+			}
+		}, 100, 100, TimeUnit.MILLISECONDS);
+		return sampler;
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// REPORT
+	///////////////////////////////////////////////////////////////////////////
+	
+	private void report(LoadStats stats, long elapsedNanos, long allocatedBytes, int serverRequests, int serverConnections, boolean drained) {
+		double seconds = elapsedNanos / 1e9;
+		LatencyHistogram.Snapshot latency = stats.getLatency();
+		ConnectionPool pool = configuration.getConnectionPool();
+		
+		StringBuilder report = new StringBuilder("\n");
+		line(report, "Requests", stats.getRequestCount() + " (2xx " + stats.getSuccessCount()
+				+ ", other codes " + stats.getErrorCount() + ", failures " + stats.getFailures() + ")");
+		line(report, "Throughput", String.format(Locale.US, "%.1f req/s", stats.getRequestCount() / seconds));
+		line(report, "Latency", String.format(Locale.US, "p50=%.2fms p99=%.2fms p999=%.2fms max=%.2fms mean=%.2fms",
+				latency.getP50() / 1000.0, latency.getP99() / 1000.0, latency.getP999() / 1000.0,
+				latency.getMax() / 1000.0, latency.getMean() / 1000.0));
+		line(report, "Server", serverRequests + " requests on " + serverConnections + " new connections");
+		line(report, "Pool", "connections=" + pool.connectionCount() + " idle=" + pool.idleConnectionCount()
+				+ " peak=" + peaks.connections);
+		line(report, "Dispatcher", "peak running=" + peaks.running + " peak queued=" + peaks.queued);
+		if( configuration.getConcurrencyLimiter() != null ){
+			line(report, "Limiter", configuration.getConcurrencyLimiter().getStates().toString());
+		}
+		line(report, "Allocation", allocatedBytes < 0 ? "unavailable on this JVM"
+				: String.format(Locale.US, "%.1f MB/s (%.1f KB/request)", allocatedBytes / seconds / (1 << 20),
+				stats.getRequestCount() == 0 ? 0 : allocatedBytes / 1024.0 / stats.getRequestCount()));
+		if( configuration.getConnectionPhaseMetrics() != null ){
+			for (Map.Entry<String, ConnectionPhaseMetrics.HostSnapshot> host : configuration.getConnectionPhaseMetrics().snapshot().entrySet()) {
+				line(report, "Phases", host.getKey() + " " + host.getValue().toString().replace("\n", "\n" + String.format("%12s", "")));
+			}
+		}
+		line(report, "In flight", drained
+				? "0 clients running, " + stateAPI.getExecutingRequests() + " requests counted by the state API"
+				: "clients still running after the read timeout");
+		System.out.println(report);
+	}
+	
+	
+	private static void line(StringBuilder report, String name, String value) {
+		report.append(String.format(Locale.US, "%-12s%s%n", name, value));
+	}
+	
+	
+	/**
+	 * Bytes allocated so far by the live threads, -1 when the JVM does not measure it
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if( !(threads instanceof com.sun.management.ThreadMXBean) ){
+			return -1;
+		}
+		com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+		if( !allocation.isThreadAllocatedMemorySupported() || !allocation.isThreadAllocatedMemoryEnabled() ){
+			return -1;
+		}
+		
+		long bytes = 0;
+		for (long id : threads.getAllThreadIds()) {
+			long allocated = allocation.getThreadAllocatedBytes(id);
+			if( allocated > 0 ){
+				bytes += allocated;
+			}
+		}
+		return bytes;
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// RUN
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Phase of the test shared by the clients
+	 */
+	static final class Run {
+		
+		private final CountDownLatch stoppedClients;
+		
+		private volatile boolean running = true;
+		private volatile boolean measuring;
+		private volatile LoadStats stats = new LoadStats();
+		
+		//Requests of every phase, for the progress lines
+		private final AtomicLong requestCount = new AtomicLong();
+		
+		
+		Run(int clients) {
+			stoppedClients = new CountDownLatch(clients);
+		}
+		
+		
+		/**
+		 * End the warm-up, the returned stats only hold the requests that end from now on
+		 */
+		LoadStats measure() {
+			LoadStats measured = new LoadStats();
+			stats = measured;
+			measuring = true;
+			return measured;
+		}
+		
+		
+		/**
+		 * Stop executing new requests, the ones in flight are recorded apart
+		 */
+		void stop() {
+			running = false;
+			measuring = false;
+			stats = new LoadStats();
+		}
+		
+		
+		boolean awaitClients(long timeoutMs) throws InterruptedException {
+			return stoppedClients.await(timeoutMs, TimeUnit.MILLISECONDS);
+		}
+		
+		
+		boolean isRunning() {
+			return running;
+		}
+		
+		boolean isMeasuring() {
+			return measuring;
+		}
+		
+		void record(long durationNanos, boolean success) {
+			stats.record(durationNanos, success);
+			requestCount.incrementAndGet();
+		}
+		
+		void recordFailure(long durationNanos, Throwable error) {
+			stats.recordFailure(durationNanos, error);
+			requestCount.incrementAndGet();
+		}
+		
+		long getRequestCount() {
+			return requestCount.get();
+		}
+		
+		void onClientStopped() {
+			stoppedClients.countDown();
+		}
+	}
+	
+	
+	private static final class Peaks {
+		
+		volatile int connections;
+		volatile int running;
+		volatile int queued;
+		
+		//Only written by the sampler thread
+		void sample(int connections, int running, int queued) {
+			this.connections = Math.max(this.connections, connections);
+			this.running = Math.max(this.running, running);
+			this.queued = Math.max(this.queued, queued);
+		}
+		
+		void reset() {
+			connections = 0;
+			running = 0;
+			queued = 0;
+		}
+	}
+	
+	
+	static final class LoadStateAPI extends WebServiceStateAPI {
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// SERVER
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Answers every request after the profile latency, with an error code at the profile rate
+	 * and a body of one of the profile sizes otherwise
+	 */
+	static final class ProfileDispatcher extends okhttp3.mockwebserver.Dispatcher {
+		
+		private final Options options;
+		private final String[] bodies;
+		private final Random random = new Random();
+		
+		//Requests with sequence number 0 are the first of their connection
+		final AtomicInteger connections = new AtomicInteger();
+		
+		
+		ProfileDispatcher(Options options) {
+			this.options = options;
+			bodies = new String[options.payloadBytes.length];
+			for (int i = 0; i < bodies.length; i++) {
+				bodies[i] = Payloads.json(options.payloadBytes[i]);
+			}
+		}
+		
+		
+		@Override
+		public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+			if( request.getSequenceNumber() == 0 ){
+				connections.incrementAndGet();
+			}
+			
+			double error;
+			int body;
+			long latencyMs = options.latencyMs;
+			synchronized (random) {
+				error = random.nextDouble();
+				body = random.nextInt(bodies.length);
+				if( options.jitterMs > 0 ){
+					latencyMs += random.nextInt(options.jitterMs + 1);
+				}
+			}
+			
+			if( latencyMs > 0 ){
+				TimeUnit.MILLISECONDS.sleep(latencyMs);
+			}
+			
+			if( error < options.errorRate ){
+				return new MockResponse()
+						.setResponseCode(options.errorCode)
+						.setHeader("Content-Type", "application/json")
+						.setBody("{\"error\":\"load test\"}");
+			}
+			return new MockResponse()
+					.setHeader("Content-Type", "application/json")
+					.setBody(bodies[body]);
+		}
+	}
+	
+	
+	
+	
+	/**
+	 * MockWebServer writes the headers and the body of a response apart, with Nagle's algorithm
+	 * the body waits for the delayed ACK of the client and every response takes 40ms more
+	 */
+	static final class NoDelayServerSocketFactory extends ServerSocketFactory {
+		
+		@Override
+		public ServerSocket createServerSocket() throws IOException {
+			return new ServerSocket() {
+				@Override
+				public Socket accept() throws IOException {
+					Socket socket = super.accept();
+					socket.setTcpNoDelay(true);
+					return socket;
+				}
+			};
+		}
+		
+		@Override
+		public ServerSocket createServerSocket(int port) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+		
+		@Override
+		public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+		
+		@Override
+		public ServerSocket createServerSocket(int port, int backlog, InetAddress address) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// OPTIONS
+	///////////////////////////////////////////////////////////////////////////
+	
+	static final class Options {
+		
+		static final String USAGE = "Options, as --name=value:\n"
+				+ "  clients                concurrent models, one request in flight each (32)\n"
+				+ "  duration               measured seconds (30)\n"
+				+ "  warmup                 seconds before measuring (5)\n"
+				+ "  latency-ms             server latency (20)\n"
+				+ "  jitter-ms              random latency added to each response (10)\n"
+				+ "  error-rate             fraction of responses with the error code (0)\n"
+				+ "  error-code             code of the error responses (500)\n"
+				+ "  payload-bytes          body sizes picked at random, comma separated (1024)\n"
+				+ "  connections            max idle connections of the pool (10)\n"
+				+ "  keep-alive             seconds an idle connection is kept (120)\n"
+				+ "  max-requests           dispatcher max requests (64)\n"
+				+ "  max-requests-per-host  dispatcher max requests per host (10000)\n"
+				+ "  limiter                adaptive concurrency limiter, true or false (false)\n"
+				+ "  log-level              HttpLogInterceptor level of the models (BODY_ONLY)\n"
+				+ "  read-timeout-ms        time waited for the last responses (4000)";
+		
+		int clients = 32;
+		int durationSeconds = 30;
+		int warmupSeconds = 5;
+		long latencyMs = 20;
+		int jitterMs = 10;
+		double errorRate = 0;
+		int errorCode = 500;
+		int[] payloadBytes = {1024};
+		int connections = 10;
+		long keepAliveSeconds = 120;
+		int maxRequests = 64;
+		int maxRequestsPerHost = 10000;
+		boolean limiter = false;
+		HttpLogInterceptor.Level logLevel = HttpLogInterceptor.Level.BODY_ONLY;
+		long readTimeoutMs = 4000;
+		
+		
+		/**
+		 * @return null when the usage was asked
+		 */
+		static Options parse(String[] args) {
+			Map<String, String> values = new HashMap<>();
+			for (String arg : args) {
+				if( arg.equals("--help") || arg.equals("-h") ){
+					return null;
+				}
+				int separator = arg.indexOf('=');
+				if( !arg.startsWith("--") || separator < 0 ){
+					throw new IllegalArgumentException("Expected --name=value: " + arg);
+				}
+				values.put(arg.substring(2, separator), arg.substring(separator + 1));
+			}
+			
+			Options options = new Options();
+			try {
+				options.clients = positive(values.remove("clients"), options.clients);
+				options.durationSeconds = positive(values.remove("duration"), options.durationSeconds);
+				options.warmupSeconds = value(values.remove("warmup"), options.warmupSeconds);
+				options.latencyMs = value(values.remove("latency-ms"), (int) options.latencyMs);
+				options.jitterMs = value(values.remove("jitter-ms"), options.jitterMs);
+				options.errorCode = value(values.remove("error-code"), options.errorCode);
+				options.connections = positive(values.remove("connections"), options.connections);
+				options.keepAliveSeconds = positive(values.remove("keep-alive"), (int) options.keepAliveSeconds);
+				options.maxRequests = positive(values.remove("max-requests"), options.maxRequests);
+				options.maxRequestsPerHost = positive(values.remove("max-requests-per-host"), options.maxRequestsPerHost);
+				options.readTimeoutMs = value(values.remove("read-timeout-ms"), (int) options.readTimeoutMs);
+				
+				String errorRate = values.remove("error-rate");
+				if( errorRate != null ){
+					options.errorRate = Double.parseDouble(errorRate);
+				}
+				
+				String payloadBytes = values.remove("payload-bytes");
+				if( payloadBytes != null ){
+					String[] sizes = payloadBytes.split(",");
+					options.payloadBytes = new int[sizes.length];
+					for (int i = 0; i < sizes.length; i++) {
+						options.payloadBytes[i] = positive(sizes[i].trim(), 0);
+					}
+				}
+				
+				String limiter = values.remove("limiter");
+				if( limiter != null ){
+					options.limiter = Boolean.parseBoolean(limiter);
+				}
+				
+				String logLevel = values.remove("log-level");
+				if( logLevel != null ){
+					options.logLevel = HttpLogInterceptor.Level.valueOf(logLevel.toUpperCase(Locale.US));
+				}
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid number: " + e.getMessage());
+			}
+			
+			if( !values.isEmpty() ){
+				throw new IllegalArgumentException("Unknown options: " + values.keySet());
+			}
+			if( options.errorRate < 0 || options.errorRate > 1 ){
+				throw new IllegalArgumentException("error-rate must be between 0 and 1: " + options.errorRate);
+			}
+			return options;
+		}
+		
+		
+		private static int value(String value, int defaultValue) {
+			if( value == null ){
+				return defaultValue;
+			}
+			int parsed = Integer.parseInt(value.trim());
+			if( parsed < 0 ) throw new IllegalArgumentException("Negative value: " + value);
+			return parsed;
+		}
+		
+		
+		private static int positive(String value, int defaultValue) {
+			int parsed = value(value, defaultValue);
+			if( parsed == 0 ) throw new IllegalArgumentException("Expected a positive value: " + value);
+			return parsed;
+		}
+		
+		
+		@Override
+		public String toString() {
+			StringBuilder payloads = new StringBuilder();
+			for (int size : payloadBytes) {
+				if( payloads.length() > 0 ){
+					payloads.append(',');
+				}
+				payloads.append(size);
+			}
+			return "clients=" + clients + " duration=" + durationSeconds + "s warmup=" + warmupSeconds + "s"
+					+ " latency=" + latencyMs + "+" + jitterMs + "ms errors=" + errorRate + "x" + errorCode
+					+ " payload=" + payloads + "B connections=" + connections + " keep-alive=" + keepAliveSeconds + "s"
+					+ " max-requests=" + maxRequests + "/" + maxRequestsPerHost + " limiter=" + limiter
+					+ " log=" + logLevel;
+		}
+	}
+	
+}
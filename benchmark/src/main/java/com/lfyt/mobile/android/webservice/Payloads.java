@@ -0,0 +1,75 @@
+package com.lfyt.mobile.android.webservice;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Json bodies shared by the benchmarks
+ */
+final class Payloads {
+	
+	private Payloads() {
+	}
+	
+	
+	/**
+	 * {"items":[...]} with as many items as needed to reach the size in bytes
+	 */
+	static String json(int bytes) {
+		StringBuilder json = new StringBuilder(bytes + 64).append("{\"items\":[");
+		for (int i = 0; json.length() < bytes - 2; i++) {
+			if( i > 0 ){
+				json.append(',');
+			}
+			appendItem(json, i);
+		}
+		return json.append("]}").toString();
+	}
+	
+	
+	/**
+	 * {"items":[...]} with the given number of items
+	 */
+	static String items(int count) {
+		StringBuilder json = new StringBuilder(count * 96 + 16).append("{\"items\":[");
+		for (int i = 0; i < count; i++) {
+			if( i > 0 ){
+				json.append(',');
+			}
+			appendItem(json, i);
+		}
+		return json.append("]}").toString();
+	}
+	
+	
+	private static void appendItem(StringBuilder json, int id) {
+		json.append("{\"id\":").append(id)
+				.append(",\"name\":\"item ").append(id)
+				.append("\",\"price\":").append(id * 1.5)
+				.append(",\"available\":").append(id % 2 == 0)
+				.append(",\"date\":\"18-10-2018\"}");
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// RESPONSE
+	///////////////////////////////////////////////////////////////////////////
+	
+	public static class ItemsResponse extends WebServiceResponse {
+		
+		List<Item> items;
+	}
+	
+	
+	public static class Item {
+		
+		long id;
+		String name;
+		double price;
+		boolean available;
+		Date date;
+	}
+	
+}
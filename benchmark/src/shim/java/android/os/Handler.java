@@ -0,0 +1,16 @@
+package android.os;
+
+/**
+ * JVM stand-in, posted tasks run right away on the calling thread
+ */
+public class Handler {
+	
+	public Handler(Looper looper) {
+	}
+	
+	public boolean post(Runnable runnable) {
+		runnable.run();
+		return true;
+	}
+	
+}
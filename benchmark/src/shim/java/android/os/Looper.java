@@ -0,0 +1,19 @@
+package android.os;
+
+/**
+ * JVM stand-in, no thread runs the main looper so every task is posted to the Handler
+ */
+public final class Looper {
+	
+	private static final Looper MAIN = new Looper();
+	
+	
+	public static Looper getMainLooper() {
+		return MAIN;
+	}
+	
+	public static Looper myLooper() {
+		return null;
+	}
+	
+}
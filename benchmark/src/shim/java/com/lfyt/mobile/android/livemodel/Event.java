@@ -0,0 +1,8 @@
+package com.lfyt.mobile.android.livemodel;
+
+/**
+ * JVM stand-in of the live model event, only used by the benchmarks
+ */
+public class Event {
+	
+}
@@ -0,0 +1,23 @@
+package com.lfyt.mobile.android.livemodel;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JVM stand-in of the live model, posted events are only counted so the benchmarks measure
+ * the library and not the observers
+ */
+public abstract class LiveModel {
+	
+	private static final AtomicLong POSTED_EVENTS = new AtomicLong();
+	
+	
+	protected void post(Event event) {
+		POSTED_EVENTS.incrementAndGet();
+	}
+	
+	
+	public static long getPostedEvents() {
+		return POSTED_EVENTS.get();
+	}
+	
+}
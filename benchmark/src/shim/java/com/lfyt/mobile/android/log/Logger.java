@@ -0,0 +1,14 @@
+package com.lfyt.mobile.android.log;
+
+/**
+ * JVM stand-in of the live model logger, logs are discarded
+ */
+public class Logger {
+	
+	public static void D(Object caller, String message) {
+	}
+	
+	public static void DI(Object caller) {
+	}
+	
+}
@@ -0,0 +1,30 @@
+package com.lfyt.mobile.android.webservice;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link HttpLogInterceptor.Logger} that hands each exchange to an {@link AsyncLogSink},
+ * the delegate is called from the sink thread instead of the OkHttp dispatcher thread.
+ */
+public class AsyncHttpLogger implements HttpLogInterceptor.ExchangeLogger {
+	
+	private final HttpLogInterceptor.Logger delegate;
+	private final AsyncLogSink sink;
+	
+	public AsyncHttpLogger(HttpLogInterceptor.Logger delegate, AsyncLogSink sink) {
+		this.delegate = delegate;
+		this.sink = sink;
+	}
+	
+	@Override
+	public void log(String message) {
+		sink.offer(delegate, Collections.singletonList(message));
+	}
+	
+	@Override
+	public void logExchange(List<String> lines) {
+		sink.offer(delegate, lines);
+	}
+	
+}
@@ -0,0 +1,309 @@
+package com.lfyt.mobile.android.webservice;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free ring buffer of http log records drained in batches by a background thread.
+ *
+ * Producers never block: when the ring is full the new record is dropped and counted,
+ * so logging never adds latency to the request path. The thread sleeps without timeout while
+ * the ring is empty and is woken by the record that fills it. Call {@link #flush(long)} before
+ * the process may die, the crash handler for example, so the tail of the log is written.
+ */
+public class AsyncLogSink implements Closeable {
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// DEFAULT
+	///////////////////////////////////////////////////////////////////////////
+	
+	public static final int DEFAULT_CAPACITY = 1024;
+	public static final int DEFAULT_BATCH_SIZE = 64;
+	public static final long DEFAULT_FLUSH_INTERVAL_MS = 100;
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// RING
+	///////////////////////////////////////////////////////////////////////////
+	
+	private final int mask;
+	private final AtomicReferenceArray<Record> records;
+	private final AtomicLongArray sequences;
+	private final AtomicLong tail = new AtomicLong();
+	private long head;
+	
+	private final int batchSize;
+	private final long flushIntervalNanos;
+	
+	private final AtomicLong droppedRecords = new AtomicLong();
+	private long reportedDroppedRecords;
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// THREAD
+	///////////////////////////////////////////////////////////////////////////
+	
+	final Thread thread;
+	
+	//The thread found the ring empty and parks until a producer unparks it
+	private final AtomicBoolean idle = new AtomicBoolean();
+	private volatile boolean closed;
+	
+	//Records written so far, guarded by flushLock for the threads waiting in flush
+	private final Object flushLock = new Object();
+	private long written;
+	
+	
+	public AsyncLogSink() {
+		this(DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MS);
+	}
+	
+	/**
+	 * @param capacity records kept before new ones are dropped, rounded up to a power of two
+	 * @param batchSize records written per drain
+	 * @param flushIntervalMs time the thread waits for more records after writing a batch that was not full
+	 */
+	public AsyncLogSink(int capacity, int batchSize, long flushIntervalMs) {
+		if( capacity <= 0 ) throw new IllegalArgumentException("capacity <= 0: " + capacity);
+		if( batchSize <= 0 ) throw new IllegalArgumentException("batchSize <= 0: " + batchSize);
+		
+		int size = Integer.highestOneBit(capacity);
+		if( size < capacity ){
+			size <<= 1;
+		}
+		
+		this.mask = size - 1;
+		this.records = new AtomicReferenceArray<>(size);
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+		
+		this.batchSize = batchSize;
+		this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+		
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drainLoop();
+			}
+		}, "WebService-HttpLog");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// PRODUCER
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Queue the lines of one exchange to be written to the logger
+	 * @return false if the ring is full and the record was dropped, or the sink is closed
+	 */
+	public boolean offer(HttpLogInterceptor.Logger logger, List<String> lines) {
+		if( closed ){
+			return false;
+		}
+		Record record = new Record(logger, lines);
+		
+		long position = tail.get();
+		int index;
+		for (;;) {
+			index = (int) (position & mask);
+			long difference = sequences.get(index) - position;
+			
+			if( difference == 0 ){
+				if( tail.compareAndSet(position, position + 1) ){
+					break;
+				}
+				position = tail.get();
+			}
+			else if( difference < 0 ){
+				//Full, drop the newest record
+				droppedRecords.incrementAndGet();
+				return false;
+			}
+			else{
+				position = tail.get();
+			}
+		}
+		
+		records.set(index, record);
+		//Volatile write, ordered before the read of idle so the thread can not miss it and park
+		sequences.set(index, position + 1);
+		
+		if( idle.compareAndSet(true, false) ){
+			LockSupport.unpark(thread);
+		}
+		return true;
+	}
+	
+	
+	/**
+	 * Records dropped because the ring was full
+	 */
+	public long getDroppedRecords() {
+		return droppedRecords.get();
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// CONSUMER
+	///////////////////////////////////////////////////////////////////////////
+	
+	private Record poll() {
+		int index = (int) (head & mask);
+		if( sequences.get(index) != head + 1 ){
+			return null;
+		}
+		
+		Record record = records.get(index);
+		records.lazySet(index, null);
+		sequences.lazySet(index, head + mask + 1);
+		head++;
+		return record;
+	}
+	
+	
+	private boolean isEmpty() {
+		return sequences.get((int) (head & mask)) != head + 1;
+	}
+	
+	
+	private void drainLoop() {
+		for (;;) {
+			int drained = 0;
+			Record record;
+			while( drained < batchSize && (record = poll()) != null ){
+				write(record);
+				drained++;
+			}
+			
+			if( drained > 0 ){
+				synchronized (flushLock) {
+					written = head;
+					flushLock.notifyAll();
+				}
+			}
+			
+			if( drained == batchSize ){
+				continue;
+			}
+			
+			if( closed && isEmpty() ){
+				return;
+			}
+			
+			if( drained > 0 ){
+				//Partial batch, give the producers some time to fill the next one
+				LockSupport.parkNanos(this, flushIntervalNanos);
+				continue;
+			}
+			
+			//Empty, sleep until the next record. Checked again after idle is set, so a record
+			//published before it is seen here and one published after it unparks the thread
+			idle.set(true);
+			if( isEmpty() && !closed ){
+				LockSupport.park(this);
+			}
+			idle.set(false);
+		}
+	}
+	
+	
+	private void write(Record record) {
+		try {
+			long dropped = droppedRecords.get();
+			if( dropped != reportedDroppedRecords ){
+				record.logger.log("--- " + (dropped - reportedDroppedRecords) + " http log records dropped ---");
+				reportedDroppedRecords = dropped;
+			}
+			
+			for (int i = 0, count = record.lines.size(); i < count; i++) {
+				record.logger.log(record.lines.get(i));
+			}
+		} catch (RuntimeException e) {
+			//Never let a faulty logger kill the drain thread
+		}
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// FLUSH
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Wait until every record offered before the call is written
+	 * @return false if they were not written within the timeout
+	 */
+	public boolean flush(long timeoutMs) {
+		long target = tail.get();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+		
+		//Skip the wait for a fuller batch
+		LockSupport.unpark(thread);
+		
+		synchronized (flushLock) {
+			while( written < target ){
+				long remainingNanos = deadline - System.nanoTime();
+				if( remainingNanos <= 0 || !thread.isAlive() ){
+					return false;
+				}
+				try {
+					TimeUnit.NANOSECONDS.timedWait(flushLock, remainingNanos);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+	
+	
+	/**
+	 * Write the records queued and stop the thread, records offered afterwards are refused
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	
+	
+	
+	private static final class Record {
+		
+		final HttpLogInterceptor.Logger logger;
+		final List<String> lines;
+		
+		Record(HttpLogInterceptor.Logger logger, List<String> lines) {
+			this.logger = logger;
+			this.lines = lines;
+		}
+	}
+	
+}
@@ -0,0 +1,78 @@
+package com.lfyt.mobile.android.webservice;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Adapter of a JSON object bound to its fields by hand, without reflection.
+ *
+ * <pre>
+ * class ItemAdapter extends BindingTypeAdapter&lt;Item&gt; {
+ *     protected Item newInstance() { return new Item(); }
+ *
+ *     protected boolean readField(JsonReader reader, String name, Item item) throws IOException {
+ *         switch (name) {
+ *             case "id": item.id = reader.nextLong(); return true;
+ *             case "name": item.name = reader.nextString(); return true;
+ *         }
+ *         return false;
+ *     }
+ *
+ *     protected void writeFields(JsonWriter writer, Item item) throws IOException {
+ *         writer.name("id").value(item.id);
+ *         writer.name("name").value(item.name);
+ *     }
+ * }
+ * </pre>
+ */
+public abstract class BindingTypeAdapter<T> extends TypeAdapter<T> {
+	
+	
+	protected abstract T newInstance();
+	
+	/**
+	 * Read the value of the field into the instance, null values are skipped before reaching it
+	 * @return false if the field is unknown, its value is skipped
+	 */
+	protected abstract boolean readField(JsonReader reader, String name, T value) throws IOException;
+	
+	protected abstract void writeFields(JsonWriter writer, T value) throws IOException;
+	
+	
+	@Override
+	public T read(JsonReader reader) throws IOException {
+		if( reader.peek() == JsonToken.NULL ){
+			reader.nextNull();
+			return null;
+		}
+		
+		T value = newInstance();
+		reader.beginObject();
+		while( reader.hasNext() ){
+			String name = reader.nextName();
+			if( reader.peek() == JsonToken.NULL || !readField(reader, name, value) ){
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return value;
+	}
+	
+	
+	@Override
+	public void write(JsonWriter writer, T value) throws IOException {
+		if( value == null ){
+			writer.nullValue();
+			return;
+		}
+		
+		writer.beginObject();
+		writeFields(writer, value);
+		writer.endObject();
+	}
+	
+}
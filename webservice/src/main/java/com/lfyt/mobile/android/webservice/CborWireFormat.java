@@ -0,0 +1,257 @@
+package com.lfyt.mobile.android.webservice;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.ProtocolException;
+
+import okhttp3.MediaType;
+import okio.Buffer;
+import okio.BufferedSource;
+
+/**
+ * CBOR (RFC 8949) decoder, tags are ignored and byte strings are exposed as base64 strings
+ */
+public class CborWireFormat implements WireFormat {
+	
+	
+	private static final MediaType MEDIA_TYPE = MediaType.parse("application/cbor");
+	
+	private static final int MAX_DEPTH = 256;
+	
+	private static final int BREAK = 0xff;
+	private static final long INDEFINITE = -1;
+	
+	
+	@Override
+	public String name() {
+		return "cbor";
+	}
+	
+	@Override
+	public MediaType mediaType() {
+		return MEDIA_TYPE;
+	}
+	
+	@Override
+	public JsonElement decode(BufferedSource source) throws IOException {
+		return read(source, 0);
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// DECODE
+	///////////////////////////////////////////////////////////////////////////
+	
+	private JsonElement read(BufferedSource source, int depth) throws IOException {
+		if( depth > MAX_DEPTH ){
+			throw new ProtocolException("CBOR nested deeper than " + MAX_DEPTH);
+		}
+		
+		int initial = source.readByte() & 0xff;
+		int major = initial >>> 5;
+		
+		switch (major) {
+			case 0:
+				return unsigned(readArgument(source, initial));
+			
+			case 1:
+				long argument = readArgument(source, initial);
+				return argument >= 0
+						? new JsonPrimitive(-1 - argument)
+						: new JsonPrimitive(BigInteger.ONE.negate().subtract(unsignedBig(argument)));
+			
+			case 2:
+				return new JsonPrimitive(readBytes(source, initial).readByteString().base64());
+			
+			case 3:
+				return new JsonPrimitive(readBytes(source, initial).readUtf8());
+			
+			case 4:
+				return readArray(source, initial, depth);
+			
+			case 5:
+				return readMap(source, initial, depth);
+			
+			case 6:
+				readArgument(source, initial);
+				return read(source, depth + 1);
+			
+			default:
+				return readSimple(source, initial);
+		}
+	}
+	
+	
+	private JsonArray readArray(BufferedSource source, int initial, int depth) throws IOException {
+		JsonArray array = new JsonArray();
+		long length = readLength(source, initial);
+		
+		if( length == INDEFINITE ){
+			while( !nextIsBreak(source) ){
+				array.add(read(source, depth + 1));
+			}
+			return array;
+		}
+		
+		for (long i = 0; i < length; i++) {
+			array.add(read(source, depth + 1));
+		}
+		return array;
+	}
+	
+	
+	private JsonObject readMap(BufferedSource source, int initial, int depth) throws IOException {
+		JsonObject object = new JsonObject();
+		long length = readLength(source, initial);
+		
+		for (long i = 0; length == INDEFINITE ? !nextIsBreak(source) : i < length; i++) {
+			JsonElement key = read(source, depth + 1);
+			if( !key.isJsonPrimitive() ){
+				throw new ProtocolException("CBOR map key is not a string or a number");
+			}
+			object.add(key.getAsString(), read(source, depth + 1));
+		}
+		return object;
+	}
+	
+	
+	/**
+	 * Content of a byte or text string, chunks of indefinite strings are joined
+	 */
+	private Buffer readBytes(BufferedSource source, int initial) throws IOException {
+		Buffer buffer = new Buffer();
+		long length = readLength(source, initial);
+		
+		if( length == INDEFINITE ){
+			while( !nextIsBreak(source) ){
+				int chunk = source.readByte() & 0xff;
+				if( (chunk >>> 5) != (initial >>> 5) ){
+					throw new ProtocolException("CBOR string chunk of another type");
+				}
+				long chunkLength = readLength(source, chunk);
+				if( chunkLength == INDEFINITE ){
+					throw new ProtocolException("CBOR string chunk of indefinite length");
+				}
+				source.readFully(buffer, chunkLength);
+			}
+			return buffer;
+		}
+		
+		source.readFully(buffer, length);
+		return buffer;
+	}
+	
+	
+	private JsonElement readSimple(BufferedSource source, int initial) throws IOException {
+		switch (initial & 0x1f) {
+			case 20:
+				return new JsonPrimitive(false);
+			case 21:
+				return new JsonPrimitive(true);
+			case 22:
+			case 23:
+				return JsonNull.INSTANCE;
+			case 25:
+				return new JsonPrimitive(halfToDouble(source.readShort() & 0xffff));
+			case 26:
+				return new JsonPrimitive((double) Float.intBitsToFloat(source.readInt()));
+			case 27:
+				return new JsonPrimitive(Double.longBitsToDouble(source.readLong()));
+			default:
+				throw new ProtocolException("Unexpected CBOR simple value " + (initial & 0x1f));
+		}
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// HEAD
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Length of a string, array or map, {@link #INDEFINITE} for indefinite items
+	 */
+	private static long readLength(BufferedSource source, int initial) throws IOException {
+		if( (initial & 0x1f) == 31 ){
+			return INDEFINITE;
+		}
+		
+		long length = readArgument(source, initial);
+		if( length < 0 ){
+			throw new ProtocolException("CBOR length over " + Long.MAX_VALUE);
+		}
+		return length;
+	}
+	
+	
+	/**
+	 * Argument of the item head, 64 bit arguments are unsigned, they are negative when over Long.MAX_VALUE
+	 */
+	private static long readArgument(BufferedSource source, int initial) throws IOException {
+		int info = initial & 0x1f;
+		if( info < 24 ){
+			return info;
+		}
+		
+		switch (info) {
+			case 24:
+				return source.readByte() & 0xffL;
+			case 25:
+				return source.readShort() & 0xffffL;
+			case 26:
+				return source.readInt() & 0xffffffffL;
+			case 27:
+				return source.readLong();
+			default:
+				throw new ProtocolException("Unexpected CBOR additional info " + info);
+		}
+	}
+	
+	
+	private static boolean nextIsBreak(BufferedSource source) throws IOException {
+		source.require(1);
+		if( (source.buffer().getByte(0) & 0xff) == BREAK ){
+			source.skip(1);
+			return true;
+		}
+		return false;
+	}
+	
+	
+	private static JsonPrimitive unsigned(long value) {
+		return value >= 0 ? new JsonPrimitive(value) : new JsonPrimitive(unsignedBig(value));
+	}
+	
+	
+	private static BigInteger unsignedBig(long value) {
+		return BigInteger.valueOf(value & Long.MAX_VALUE).setBit(63);
+	}
+	
+	
+	private static double halfToDouble(int half) {
+		int exponent = (half >> 10) & 0x1f;
+		int mantissa = half & 0x3ff;
+		
+		double value;
+		if( exponent == 0 ){
+			value = Math.scalb((double) mantissa, -24);
+		}
+		else if( exponent != 31 ){
+			value = Math.scalb((double) (mantissa + 1024), exponent - 25);
+		}
+		else{
+			value = mantissa == 0 ? Double.POSITIVE_INFINITY : Double.NaN;
+		}
+		return (half & 0x8000) != 0 ? -value : value;
+	}
+	
+}
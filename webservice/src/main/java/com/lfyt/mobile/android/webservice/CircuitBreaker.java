@@ -0,0 +1,367 @@
+package com.lfyt.mobile.android.webservice;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per host circuit breaker fed with the outcomes classified by the WebServiceModel.
+ *
+ * The last window size calls of each host are kept, when the failure rate or the slow call
+ * rate goes over its threshold the circuit opens and requests fail fast for the open duration.
+ * After that a limited number of probe calls is let through, the circuit closes if all of them
+ * succeed and opens again on the first failure. Only the calls admitted as probes count while
+ * half open, calls admitted before the circuit opened are ignored when they finish.
+ *
+ * A failed connection is a failure of the host only when the device is online, as told by the
+ * {@link Connectivity} or else by a response of any host in the last online window.
+ */
+public class CircuitBreaker {
+	
+	
+	public enum State {
+		CLOSED,
+		OPEN,
+		HALF_OPEN
+	}
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// DEFAULT
+	///////////////////////////////////////////////////////////////////////////
+	
+	public static final int DEFAULT_WINDOW_SIZE = 20;
+	public static final int DEFAULT_MINIMUM_CALLS = 10;
+	public static final float DEFAULT_FAILURE_RATE = 0.5f;
+	public static final float DEFAULT_SLOW_CALL_RATE = 0.8f;
+	public static final long DEFAULT_SLOW_CALL_MS = 3000;
+	public static final long DEFAULT_OPEN_DURATION_MS = 10000;
+	public static final int DEFAULT_PROBE_CALLS = 2;
+	public static final long DEFAULT_ONLINE_WINDOW_MS = 60000;
+	
+	
+	/**
+	 * Network state of the device, e.g. from the ConnectivityManager of the app
+	 */
+	public interface Connectivity {
+		boolean isConnected();
+	}
+	
+	
+	private final int windowSize;
+	private final int minimumCalls;
+	private final float failureRate;
+	private final float slowCallRate;
+	private final long slowCallNanos;
+	private final long openDurationNanos;
+	private final int probeCalls;
+	private final long onlineWindowNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_ONLINE_WINDOW_MS);
+	
+	private volatile Connectivity connectivity;
+	
+	//Last response of any host, the device was online then
+	private volatile long lastResponseNanos = System.nanoTime() - onlineWindowNanos;
+	
+	private final ConcurrentHashMap<String, HostCircuit> circuits = new ConcurrentHashMap<>();
+	
+	private final AtomicLong rejectedCount = new AtomicLong();
+	
+	
+	public CircuitBreaker() {
+		this(DEFAULT_WINDOW_SIZE, DEFAULT_MINIMUM_CALLS, DEFAULT_FAILURE_RATE, DEFAULT_SLOW_CALL_RATE,
+				DEFAULT_SLOW_CALL_MS, DEFAULT_OPEN_DURATION_MS, DEFAULT_PROBE_CALLS);
+	}
+	
+	/**
+	 * @param windowSize calls of each host taken into account
+	 * @param minimumCalls calls needed in the window before the circuit can open
+	 * @param failureRate fraction of failed calls that opens the circuit
+	 * @param slowCallRate fraction of slow calls that opens the circuit
+	 * @param slowCallMs duration from which a call is slow
+	 * @param openDurationMs time the circuit stays open before probing
+	 * @param probeCalls calls let through while half open
+	 */
+	public CircuitBreaker(int windowSize, int minimumCalls, float failureRate, float slowCallRate,
+			long slowCallMs, long openDurationMs, int probeCalls) {
+		if( windowSize <= 0 ) throw new IllegalArgumentException("windowSize <= 0: " + windowSize);
+		if( probeCalls <= 0 ) throw new IllegalArgumentException("probeCalls <= 0: " + probeCalls);
+		
+		this.windowSize = windowSize;
+		this.minimumCalls = Math.min(minimumCalls, windowSize);
+		this.failureRate = failureRate;
+		this.slowCallRate = slowCallRate;
+		this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMs);
+		this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMs);
+		this.probeCalls = probeCalls;
+	}
+	
+	
+	/**
+	 * Source of the network state, without it the device is online while hosts respond
+	 */
+	public CircuitBreaker setConnectivity(Connectivity connectivity) {
+		this.connectivity = connectivity;
+		return this;
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// CALLS
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * @return permit of the call, to give back with release or record, or null if the circuit
+	 * of the host is open and the call must fail fast
+	 */
+	public Permit tryAcquire(String host) {
+		Permit permit = circuitOf(host).tryAcquire();
+		if( permit == null ){
+			rejectedCount.incrementAndGet();
+		}
+		return permit;
+	}
+	
+	
+	/**
+	 * Give back the permit of a call that was not sent
+	 */
+	public void release(String host, Permit permit) {
+		circuitOf(host).release(permit);
+	}
+	
+	
+	/**
+	 * Record the outcome of a call that acquired a permit. Server errors, timeouts and connections
+	 * failed while online are failures, responses of the server are successes, and failures that say
+	 * nothing about the host, like a cancelled call or a device offline, are neutral and only give
+	 * back the permit
+	 */
+	public void record(String host, Permit permit, WebServiceMetrics.Outcome outcome, long durationNanos) {
+		boolean response = outcome == WebServiceMetrics.Outcome.SUCCESS
+				|| outcome == WebServiceMetrics.Outcome.CLIENT_ERROR
+				|| outcome == WebServiceMetrics.Outcome.SERVER_ERROR;
+		if( response ){
+			lastResponseNanos = System.nanoTime();
+		}
+		
+		boolean failure = outcome == WebServiceMetrics.Outcome.SERVER_ERROR
+				|| outcome == WebServiceMetrics.Outcome.TIMEOUT
+				|| (outcome == WebServiceMetrics.Outcome.NO_INTERNET && isOnline());
+		boolean neutral = !failure && !response;
+		
+		HostCircuit circuit = circuitOf(host);
+		if( neutral ){
+			circuit.release(permit);
+		}
+		else{
+			circuit.record(permit, failure, durationNanos >= slowCallNanos);
+		}
+	}
+	
+	
+	/**
+	 * Whether a failed connection can be blamed on the host
+	 */
+	boolean isOnline() {
+		Connectivity connectivity = this.connectivity;
+		if( connectivity != null ){
+			return connectivity.isConnected();
+		}
+		return System.nanoTime() - lastResponseNanos < onlineWindowNanos;
+	}
+	
+	
+	public State getState(String host) {
+		return circuitOf(host).getState();
+	}
+	
+	
+	/**
+	 * State of every host that was called
+	 */
+	public Map<String, State> getStates() {
+		Map<String, State> states = new HashMap<>();
+		for (Map.Entry<String, HostCircuit> entry : circuits.entrySet()) {
+			states.put(entry.getKey(), entry.getValue().getState());
+		}
+		return Collections.unmodifiableMap(states);
+	}
+	
+	
+	/**
+	 * Calls that failed fast because their circuit was open
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+	
+	
+	private HostCircuit circuitOf(String host) {
+		HostCircuit circuit = circuits.get(host);
+		if( circuit == null ){
+			HostCircuit created = new HostCircuit();
+			circuit = circuits.putIfAbsent(host, created);
+			if( circuit == null ){
+				circuit = created;
+			}
+		}
+		return circuit;
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// PERMIT
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Admission of one call, tells whether it was let through as a probe of a half open circuit
+	 */
+	public static final class Permit {
+		
+		//Calls of a closed circuit, nothing to tell them apart
+		static final Permit CALL = new Permit(0);
+		
+		final boolean probe;
+		final int halfOpenCount;
+		
+		private Permit(int halfOpenCount) {
+			this.probe = halfOpenCount > 0;
+			this.halfOpenCount = halfOpenCount;
+		}
+		
+		public boolean isProbe() {
+			return probe;
+		}
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// HOST CIRCUIT
+	///////////////////////////////////////////////////////////////////////////
+	
+	private final class HostCircuit {
+		
+		//Bit 1 failed, bit 2 slow
+		private final byte[] window = new byte[windowSize];
+		private int position;
+		private int calls;
+		private int failures;
+		private int slowCalls;
+		
+		private State state = State.CLOSED;
+		private long openedAtNanos;
+		private int halfOpenCount;
+		private int probesInFlight;
+		private int probesSucceeded;
+		
+		
+		synchronized Permit tryAcquire() {
+			if( state == State.OPEN ){
+				if( System.nanoTime() - openedAtNanos < openDurationNanos ){
+					return null;
+				}
+				state = State.HALF_OPEN;
+				halfOpenCount++;
+				probesInFlight = 0;
+				probesSucceeded = 0;
+			}
+			
+			if( state == State.HALF_OPEN ){
+				if( probesInFlight + probesSucceeded >= probeCalls ){
+					return null;
+				}
+				probesInFlight++;
+				return new Permit(halfOpenCount);
+			}
+			return Permit.CALL;
+		}
+		
+		
+		synchronized void release(Permit permit) {
+			if( isCurrentProbe(permit) ){
+				probesInFlight--;
+			}
+		}
+		
+		
+		synchronized void record(Permit permit, boolean failure, boolean slow) {
+			if( permit.probe ){
+				if( !isCurrentProbe(permit) ){
+					return;
+				}
+				probesInFlight--;
+				
+				if( failure || slow ){
+					open();
+				}
+				else if( ++probesSucceeded >= probeCalls ){
+					close();
+				}
+				return;
+			}
+			
+			//Admitted before the circuit opened, says nothing about the host now
+			if( state != State.CLOSED ){
+				return;
+			}
+			
+			byte outcome = (byte) ((failure ? 1 : 0) | (slow ? 2 : 0));
+			if( calls == windowSize ){
+				byte oldest = window[position];
+				failures -= oldest & 1;
+				slowCalls -= (oldest >> 1) & 1;
+			}
+			else{
+				calls++;
+			}
+			window[position] = outcome;
+			position = (position + 1) % windowSize;
+			failures += outcome & 1;
+			slowCalls += (outcome >> 1) & 1;
+			
+			if( calls >= minimumCalls
+					&& (failures >= failureRate * calls || slowCalls >= slowCallRate * calls) ){
+				open();
+			}
+		}
+		
+		
+		//Probe of the current half open period, probes of a previous one are ignored
+		private boolean isCurrentProbe(Permit permit) {
+			return permit.probe && state == State.HALF_OPEN && permit.halfOpenCount == halfOpenCount;
+		}
+		
+		
+		synchronized State getState() {
+			if( state == State.OPEN && System.nanoTime() - openedAtNanos >= openDurationNanos ){
+				return State.HALF_OPEN;
+			}
+			return state;
+		}
+		
+		
+		private void open() {
+			state = State.OPEN;
+			openedAtNanos = System.nanoTime();
+		}
+		
+		
+		private void close() {
+			state = State.CLOSED;
+			position = 0;
+			calls = 0;
+			failures = 0;
+			slowCalls = 0;
+		}
+	}
+	
+}
@@ -0,0 +1,23 @@
+package com.lfyt.mobile.android.webservice;
+
+import java.io.IOException;
+
+/**
+ * Delivered to onFailure when a request is not sent because the circuit of its host is open
+ */
+public class CircuitOpenException extends IOException {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private final String host;
+	
+	public CircuitOpenException(String host) {
+		super("Circuit open for " + host);
+		this.host = host;
+	}
+	
+	public String getHost() {
+		return host;
+	}
+	
+}
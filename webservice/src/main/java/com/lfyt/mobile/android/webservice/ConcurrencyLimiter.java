@@ -0,0 +1,414 @@
+package com.lfyt.mobile.android.webservice;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Adaptive per host concurrency limit.
+ *
+ * The limit follows an AIMD algorithm driven by the round trip time measured at the network layer
+ * by {@link #newInterceptor()}: it grows by 1/limit on every healthy call that used the available
+ * concurrency, and is cut by {@link #BACKOFF_RATIO} when a call fails with an overload outcome or
+ * takes longer than {@link #RTT_TOLERANCE} times the long term average RTT of its endpoint.
+ *
+ * Calls over the limit wait in one FIFO queue per {@link RequestPriority} and are started in
+ * priority order, lower priorities only while the host is under their share of the limit.
+ * A queued call moves up one priority every aging interval so it is never starved, and is
+ * optionally rejected after a queue timeout.
+ */
+public class ConcurrencyLimiter {
+	
+	
+	/**
+	 * Request waiting for a slot of its host
+	 */
+	public interface Task {
+		
+		/**
+		 * Slot acquired, send the request. Must end with a call to {@link #release}
+		 */
+		void start();
+		
+		/**
+		 * Waited longer than the queue timeout, the request was not sent
+		 */
+		void reject();
+	}
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// DEFAULT
+	///////////////////////////////////////////////////////////////////////////
+	
+	public static final int DEFAULT_INITIAL_LIMIT = 10;
+	public static final int DEFAULT_MIN_LIMIT = 2;
+	public static final int DEFAULT_MAX_LIMIT = 64;
+	public static final long DEFAULT_AGING_MS = 2000;
+	
+	private static final double BACKOFF_RATIO = 0.9;
+	private static final double RTT_TOLERANCE = 2.0;
+	private static final double RTT_SMOOTHING = 0.05;
+	
+	private static final RequestPriority[] PRIORITIES = RequestPriority.values();
+	
+	
+	private final double initialLimit;
+	private final double minLimit;
+	private final double maxLimit;
+	private final long queueTimeoutMs;
+	private final long agingNanos;
+	
+	private final ConcurrentHashMap<String, HostLimit> limits = new ConcurrentHashMap<>();
+	private final AtomicLong rejectedCount = new AtomicLong();
+	
+	private ScheduledThreadPoolExecutor timeoutExecutor;
+	
+	
+	public ConcurrencyLimiter() {
+		this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT, 0);
+	}
+	
+	/**
+	 * @param queueTimeoutMs time a request can wait for a slot before being rejected, 0 waits forever
+	 */
+	public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long queueTimeoutMs) {
+		this(initialLimit, minLimit, maxLimit, queueTimeoutMs, DEFAULT_AGING_MS);
+	}
+	
+	/**
+	 * @param agingMs time a queued request waits before moving up one priority
+	 */
+	public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long queueTimeoutMs, long agingMs) {
+		if( minLimit <= 0 ) throw new IllegalArgumentException("minLimit <= 0: " + minLimit);
+		if( maxLimit < minLimit ) throw new IllegalArgumentException("maxLimit < minLimit: " + maxLimit);
+		if( agingMs <= 0 ) throw new IllegalArgumentException("agingMs <= 0: " + agingMs);
+		
+		this.initialLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.queueTimeoutMs = queueTimeoutMs;
+		this.agingNanos = TimeUnit.MILLISECONDS.toNanos(agingMs);
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// CALLS
+	///////////////////////////////////////////////////////////////////////////
+	
+	public void submit(String host, Task task) {
+		submit(host, RequestPriority.NORMAL, task);
+	}
+	
+	
+	/**
+	 * Start the task now if its host is under the limit of the priority, queue it otherwise
+	 */
+	public void submit(String host, RequestPriority priority, Task task) {
+		HostLimit limit = limitOf(host);
+		if( limit.tryAcquire(priority, task) ){
+			task.start();
+			return;
+		}
+		
+		if( queueTimeoutMs > 0 ){
+			scheduleTimeout(limit, task);
+		}
+	}
+	
+	
+	/**
+	 * Give back the slot of a started task
+	 * @param endpoint endpoint of the call, its RTT is only compared with the RTT of the same endpoint
+	 * @param rttNanos round trip measured by the interceptor, -1 when the call did not reach the server
+	 * @param overload true when the outcome signals an overloaded server, like a timeout or a 5xx
+	 */
+	public void release(String host, String endpoint, long rttNanos, boolean overload) {
+		Task next = limitOf(host).release(endpoint, rttNanos, overload);
+		while( next != null ){
+			next.start();
+			next = limitOf(host).startNext();
+		}
+	}
+	
+	
+	/**
+	 * Network interceptor measuring the round trip of each exchange, from the request written to the
+	 * response headers read, without the time spent queued, connecting, retrying or delivering the
+	 * response. Must be added with addNetworkInterceptor to the clients of the limited requests
+	 */
+	public Interceptor newInterceptor() {
+		return new Interceptor() {
+			@Override
+			public Response intercept(Chain chain) throws IOException {
+				Request request = chain.request();
+				long startNanos = System.nanoTime();
+				Response response = chain.proceed(request);
+				
+				//Last exchange of the call, retries and redirects overwrite it
+				RequestTag tag = RequestTag.of(request);
+				if( tag != null ){
+					tag.rttNanos = System.nanoTime() - startNanos;
+				}
+				return response;
+			}
+		};
+	}
+	
+	
+	public int getLimit(String host) {
+		return limitOf(host).getLimit();
+	}
+	
+	
+	/**
+	 * Limit, requests in flight and queued requests by priority of each host
+	 */
+	public Map<String, String> getStates() {
+		Map<String, String> states = new HashMap<>();
+		for (Map.Entry<String, HostLimit> entry : limits.entrySet()) {
+			states.put(entry.getKey(), entry.getValue().toString());
+		}
+		return Collections.unmodifiableMap(states);
+	}
+	
+	
+	/**
+	 * Requests rejected after waiting longer than the queue timeout
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+	
+	
+	private HostLimit limitOf(String host) {
+		HostLimit limit = limits.get(host);
+		if( limit == null ){
+			HostLimit created = new HostLimit();
+			limit = limits.putIfAbsent(host, created);
+			if( limit == null ){
+				limit = created;
+			}
+		}
+		return limit;
+	}
+	
+	
+	private void scheduleTimeout(final HostLimit limit, final Task task) {
+		timeoutExecutor().schedule(new Runnable() {
+			@Override
+			public void run() {
+				if( limit.remove(task) ){
+					rejectedCount.incrementAndGet();
+					task.reject();
+				}
+			}
+		}, queueTimeoutMs, TimeUnit.MILLISECONDS);
+	}
+	
+	
+	private synchronized ScheduledThreadPoolExecutor timeoutExecutor() {
+		if( timeoutExecutor == null ){
+			timeoutExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "WebService-QueueTimeout");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return timeoutExecutor;
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// HOST LIMIT
+	///////////////////////////////////////////////////////////////////////////
+	
+	private final class HostLimit {
+		
+		private final ArrayDeque<Queued>[] queues;
+		
+		private double limit = initialLimit;
+		private int inFlight;
+		
+		//Long term RTT of each endpoint, the endpoints of a host can be fast or slow
+		private final HashMap<String, RttAverage> rtts = new HashMap<>();
+		
+		
+		@SuppressWarnings("unchecked")
+		HostLimit() {
+			queues = (ArrayDeque<Queued>[]) new ArrayDeque<?>[PRIORITIES.length];
+			for (int i = 0; i < queues.length; i++) {
+				queues[i] = new ArrayDeque<>();
+			}
+		}
+		
+		
+		synchronized boolean tryAcquire(RequestPriority priority, Task task) {
+			//Never overtake a queued request of the same or a higher priority
+			if( !hasQueued(priority.ordinal()) && hasCapacity(priority.ordinal()) ){
+				inFlight++;
+				return true;
+			}
+			queues[priority.ordinal()].add(new Queued(task, System.nanoTime()));
+			return false;
+		}
+		
+		
+		synchronized Task release(String endpoint, long rttNanos, boolean overload) {
+			boolean usedLimit = inFlight >= (int) limit / 2;
+			inFlight--;
+			
+			//Failures are not a valid RTT sample
+			if( overload ){
+				limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+				return startNext();
+			}
+			
+			//Nothing measured, the call did not reach the server
+			if( rttNanos < 0 ){
+				return startNext();
+			}
+			
+			RttAverage rtt = rtts.get(endpoint);
+			if( rtt == null ){
+				rtt = new RttAverage(rttNanos);
+				rtts.put(endpoint, rtt);
+			}
+			
+			if( rttNanos > RTT_TOLERANCE * rtt.nanos ){
+				limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+			}
+			else if( usedLimit ){
+				limit = Math.min(maxLimit, limit + 1 / limit);
+			}
+			rtt.nanos += RTT_SMOOTHING * (rttNanos - rtt.nanos);
+			
+			return startNext();
+		}
+		
+		
+		/**
+		 * Oldest request of the highest effective priority, if the host has capacity for it
+		 */
+		synchronized Task startNext() {
+			long now = System.nanoTime();
+			Queued next = null;
+			int nextQueue = -1;
+			int nextPriority = Integer.MAX_VALUE;
+			for (int i = 0; i < queues.length; i++) {
+				Queued head = queues[i].peek();
+				if( head == null ){
+					continue;
+				}
+				int priority = effectivePriority(i, head, now);
+				if( priority < nextPriority || (priority == nextPriority && head.enqueuedNanos < next.enqueuedNanos) ){
+					next = head;
+					nextQueue = i;
+					nextPriority = priority;
+				}
+			}
+			
+			if( next == null || !hasCapacity(nextPriority) ){
+				return null;
+			}
+			inFlight++;
+			queues[nextQueue].poll();
+			return next.task;
+		}
+		
+		
+		synchronized boolean remove(Task task) {
+			for (ArrayDeque<Queued> queue : queues) {
+				for (Iterator<Queued> iterator = queue.iterator(); iterator.hasNext(); ) {
+					if( iterator.next().task == task ){
+						iterator.remove();
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+		
+		
+		synchronized int getLimit() {
+			return (int) limit;
+		}
+		
+		
+		private int effectivePriority(int priority, Queued queued, long now) {
+			return (int) Math.max(0, priority - (now - queued.enqueuedNanos) / agingNanos);
+		}
+		
+		
+		private boolean hasCapacity(int priority) {
+			int capacity = Math.max(1, (int) (PRIORITIES[priority].getCapacity() * (int) limit));
+			return inFlight < capacity;
+		}
+		
+		
+		private boolean hasQueued(int lowestPriority) {
+			for (int i = 0; i <= lowestPriority; i++) {
+				if( !queues[i].isEmpty() ){
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		
+		@Override
+		public synchronized String toString() {
+			StringBuilder state = new StringBuilder()
+					.append("limit=").append((int) limit)
+					.append(" inFlight=").append(inFlight);
+			for (RequestPriority priority : PRIORITIES) {
+				state.append(' ').append(priority.name().toLowerCase(Locale.US))
+						.append('=').append(queues[priority.ordinal()].size());
+			}
+			return state.append(" endpoints=").append(rtts.size()).toString();
+		}
+	}
+	
+	
+	private static final class RttAverage {
+		
+		double nanos;
+		
+		RttAverage(double nanos) {
+			this.nanos = nanos;
+		}
+	}
+	
+	
+	private static final class Queued {
+		
+		final Task task;
+		final long enqueuedNanos;
+		
+		Queued(Task task, long enqueuedNanos) {
+			this.task = task;
+			this.enqueuedNanos = enqueuedNanos;
+		}
+	}
+	
+}
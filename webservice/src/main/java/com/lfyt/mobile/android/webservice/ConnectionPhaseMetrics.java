@@ -0,0 +1,397 @@
+package com.lfyt.mobile.android.webservice;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * OkHttp event listener factory timing the phases of every call, aggregated by host.
+ *
+ * Each phase goes to its own {@link LatencyHistogram}, and every connection acquired by a call is
+ * counted as new or pooled, so the effect of the pool and protocol settings can be measured.
+ * The phases of a call in flight can be read with {@link #describe(Call)}, used by the log line.
+ */
+public class ConnectionPhaseMetrics implements EventListener.Factory {
+	
+	
+	public enum Phase {
+		/** Host name resolution */
+		DNS,
+		/** TCP connect, proxy tunnel included, up to the TLS handshake */
+		CONNECT,
+		/** TLS handshake */
+		TLS,
+		/** Request headers and body written */
+		REQUEST_WRITE,
+		/** From the request written to the response headers read */
+		TIME_TO_FIRST_BYTE,
+		/** Response body read, as fast as the converter consumes it */
+		RESPONSE_READ,
+		/** Whole call, dispatcher queue included for async calls */
+		CALL
+	}
+	
+	
+	private static final Phase[] PHASES = Phase.values();
+	
+	
+	private final ConcurrentHashMap<String, HostPhases> hosts = new ConcurrentHashMap<>();
+	
+	//Listeners of the calls in flight, for the log line
+	private final ConcurrentHashMap<Call, CallListener> calls = new ConcurrentHashMap<>();
+	
+	
+	@Override
+	public EventListener create(Call call) {
+		return new CallListener(call.request().url().host());
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// STATS
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Phases and connections of every host called so far
+	 */
+	public Map<String, HostSnapshot> snapshot() {
+		Map<String, HostSnapshot> snapshot = new HashMap<>();
+		for (Map.Entry<String, HostPhases> entry : hosts.entrySet()) {
+			snapshot.put(entry.getKey(), entry.getValue().snapshot());
+		}
+		return Collections.unmodifiableMap(snapshot);
+	}
+	
+	
+	/**
+	 * Forget the stats of every host, the calls in flight record their next phases from scratch
+	 */
+	public void reset() {
+		hosts.clear();
+	}
+	
+	
+	/**
+	 * Phases of a call in flight done so far, like "dns=2ms connect=31ms tls=18ms ttfb=45ms new
+	 * connection", empty when the call is unknown
+	 */
+	public String describe(Call call) {
+		CallListener listener = calls.get(call);
+		return listener == null ? "" : listener.describe();
+	}
+	
+	
+	private HostPhases hostOf(String host) {
+		HostPhases phases = hosts.get(host);
+		if( phases == null ){
+			HostPhases created = new HostPhases();
+			phases = hosts.putIfAbsent(host, created);
+			if( phases == null ){
+				phases = created;
+			}
+		}
+		return phases;
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// CALL LISTENER
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Events of a single call, OkHttp never delivers them concurrently
+	 */
+	private final class CallListener extends EventListener {
+		
+		private final String host;
+		
+		//Last duration of each phase in the call, -1 when not done
+		private final long[] lastNanos = new long[PHASES.length];
+		
+		private long callStartNanos;
+		private long dnsStartNanos;
+		private long connectStartNanos;
+		private long secureConnectStartNanos;
+		private boolean secureConnect;
+		private long requestStartNanos;
+		private long requestEndNanos;
+		private long responseStartNanos;
+		private boolean connecting;
+		private volatile Boolean pooled;
+		
+		
+		CallListener(String host) {
+			this.host = host;
+			Arrays.fill(lastNanos, -1);
+		}
+		
+		
+		@Override
+		public void callStart(Call call) {
+			calls.put(call, this);
+			callStartNanos = System.nanoTime();
+		}
+		
+		@Override
+		public void dnsStart(Call call, String domainName) {
+			dnsStartNanos = System.nanoTime();
+		}
+		
+		@Override
+		public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+			record(Phase.DNS, dnsStartNanos);
+		}
+		
+		@Override
+		public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+			connecting = true;
+			secureConnect = false;
+			connectStartNanos = System.nanoTime();
+		}
+		
+		@Override
+		public void secureConnectStart(Call call) {
+			secureConnect = true;
+			secureConnectStartNanos = System.nanoTime();
+			record(Phase.CONNECT, connectStartNanos, secureConnectStartNanos);
+		}
+		
+		@Override
+		public void secureConnectEnd(Call call, Handshake handshake) {
+			record(Phase.TLS, secureConnectStartNanos);
+		}
+		
+		@Override
+		public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+			if( !secureConnect ){
+				record(Phase.CONNECT, connectStartNanos);
+			}
+		}
+		
+		@Override
+		public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol, IOException ioe) {
+			hostOf(host).failedConnections.incrementAndGet();
+		}
+		
+		@Override
+		public void connectionAcquired(Call call, Connection connection) {
+			pooled = !connecting;
+			HostPhases phases = hostOf(host);
+			(connecting ? phases.newConnections : phases.pooledConnections).incrementAndGet();
+			connecting = false;
+		}
+		
+		@Override
+		public void requestHeadersStart(Call call) {
+			requestStartNanos = System.nanoTime();
+		}
+		
+		@Override
+		public void requestHeadersEnd(Call call, Request request) {
+			requestEndNanos = System.nanoTime();
+		}
+		
+		@Override
+		public void requestBodyEnd(Call call, long byteCount) {
+			requestEndNanos = System.nanoTime();
+		}
+		
+		@Override
+		public void responseHeadersStart(Call call) {
+			record(Phase.REQUEST_WRITE, requestStartNanos, requestEndNanos);
+		}
+		
+		//Headers start is sent before waiting for the server, the first byte is only known once they are read
+		@Override
+		public void responseHeadersEnd(Call call, Response response) {
+			responseStartNanos = System.nanoTime();
+			record(Phase.TIME_TO_FIRST_BYTE, requestEndNanos, responseStartNanos);
+		}
+		
+		@Override
+		public void responseBodyEnd(Call call, long byteCount) {
+			record(Phase.RESPONSE_READ, responseStartNanos);
+		}
+		
+		@Override
+		public void callEnd(Call call) {
+			record(Phase.CALL, callStartNanos);
+			calls.remove(call);
+		}
+		
+		@Override
+		public void callFailed(Call call, IOException ioe) {
+			record(Phase.CALL, callStartNanos);
+			hostOf(host).failedCalls.incrementAndGet();
+			calls.remove(call);
+		}
+		
+		
+		private void record(Phase phase, long startNanos) {
+			record(phase, startNanos, System.nanoTime());
+		}
+		
+		
+		private void record(Phase phase, long startNanos, long endNanos) {
+			long durationNanos = endNanos - startNanos;
+			lastNanos[phase.ordinal()] = durationNanos;
+			
+			//Looked up each time, a reset must not leave the calls in flight on the forgotten stats
+			hostOf(host).record(phase, durationNanos);
+		}
+		
+		
+		String describe() {
+			StringBuilder description = new StringBuilder();
+			appendPhase(description, Phase.DNS, "dns");
+			appendPhase(description, Phase.CONNECT, "connect");
+			appendPhase(description, Phase.TLS, "tls");
+			appendPhase(description, Phase.REQUEST_WRITE, "write");
+			appendPhase(description, Phase.TIME_TO_FIRST_BYTE, "ttfb");
+			
+			Boolean pooled = this.pooled;
+			if( pooled != null ){
+				if( description.length() > 0 ){
+					description.append(' ');
+				}
+				description.append(pooled ? "pooled connection" : "new connection");
+			}
+			return description.toString();
+		}
+		
+		
+		private void appendPhase(StringBuilder description, Phase phase, String name) {
+			long nanos = lastNanos[phase.ordinal()];
+			if( nanos < 0 ){
+				return;
+			}
+			if( description.length() > 0 ){
+				description.append(' ');
+			}
+			description.append(name).append('=').append(TimeUnit.NANOSECONDS.toMillis(nanos)).append("ms");
+		}
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// HOST
+	///////////////////////////////////////////////////////////////////////////
+	
+	private static final class HostPhases {
+		
+		final LatencyHistogram[] latencies = new LatencyHistogram[PHASES.length];
+		final AtomicLong newConnections = new AtomicLong();
+		final AtomicLong pooledConnections = new AtomicLong();
+		final AtomicLong failedConnections = new AtomicLong();
+		final AtomicLong failedCalls = new AtomicLong();
+		
+		HostPhases() {
+			for (int i = 0; i < latencies.length; i++) {
+				latencies[i] = new LatencyHistogram();
+			}
+		}
+		
+		void record(Phase phase, long durationNanos) {
+			latencies[phase.ordinal()].recordNanos(durationNanos);
+		}
+		
+		HostSnapshot snapshot() {
+			Map<Phase, LatencyHistogram.Snapshot> phases = new EnumMap<>(Phase.class);
+			for (Phase phase : PHASES) {
+				phases.put(phase, latencies[phase.ordinal()].snapshot());
+			}
+			return new HostSnapshot(phases, newConnections.get(), pooledConnections.get(),
+					failedConnections.get(), failedCalls.get());
+		}
+	}
+	
+	
+	public static class HostSnapshot {
+		
+		private final Map<Phase, LatencyHistogram.Snapshot> phases;
+		private final long newConnections;
+		private final long pooledConnections;
+		private final long failedConnections;
+		private final long failedCalls;
+		
+		HostSnapshot(Map<Phase, LatencyHistogram.Snapshot> phases, long newConnections, long pooledConnections,
+				long failedConnections, long failedCalls) {
+			this.phases = Collections.unmodifiableMap(phases);
+			this.newConnections = newConnections;
+			this.pooledConnections = pooledConnections;
+			this.failedConnections = failedConnections;
+			this.failedCalls = failedCalls;
+		}
+		
+		/**
+		 * Latency values in microseconds
+		 */
+		public LatencyHistogram.Snapshot getLatency(Phase phase) {
+			return phases.get(phase);
+		}
+		
+		public long getNewConnections() {
+			return newConnections;
+		}
+		
+		public long getPooledConnections() {
+			return pooledConnections;
+		}
+		
+		/**
+		 * Share of the connections acquired from the pool, 0 when no connection was acquired
+		 */
+		public float getReuseRate() {
+			long total = newConnections + pooledConnections;
+			return total == 0 ? 0 : (float) pooledConnections / total;
+		}
+		
+		public long getFailedConnections() {
+			return failedConnections;
+		}
+		
+		public long getFailedCalls() {
+			return failedCalls;
+		}
+		
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder()
+					.append("new=").append(newConnections)
+					.append(" pooled=").append(pooledConnections)
+					.append(" failedConnections=").append(failedConnections)
+					.append(" failedCalls=").append(failedCalls);
+			for (Map.Entry<Phase, LatencyHistogram.Snapshot> entry : phases.entrySet()) {
+				if( entry.getValue().getCount() != 0 ){
+					builder.append("\n").append(entry.getKey()).append(' ').append(entry.getValue());
+				}
+			}
+			return builder.toString();
+		}
+	}
+	
+}
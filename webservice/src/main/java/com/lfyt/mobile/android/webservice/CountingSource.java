@@ -0,0 +1,29 @@
+package com.lfyt.mobile.android.webservice;
+
+import java.io.IOException;
+
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Source;
+
+/**
+ * Source counting the bytes read through it
+ */
+final class CountingSource extends ForwardingSource {
+	
+	volatile long count;
+	
+	CountingSource(Source delegate) {
+		super(delegate);
+	}
+	
+	@Override
+	public long read(Buffer sink, long byteCount) throws IOException {
+		long read = super.read(sink, byteCount);
+		if( read > 0 ){
+			count += read;
+		}
+		return read;
+	}
+	
+}
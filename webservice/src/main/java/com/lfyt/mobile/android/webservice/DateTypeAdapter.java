@@ -0,0 +1,132 @@
+package com.lfyt.mobile.android.webservice;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.internal.bind.util.ISO8601Utils;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Thread safe codec of dd-MM-yyyy dates.
+ *
+ * Conversions go through the same lenient SimpleDateFormat and ISO 8601 fallbacks of Gson's date
+ * adapter, so the accepted input and the results are unchanged. The last results are remembered, the
+ * dates of a response repeat a lot and a remembered one is converted without the lock or the parse.
+ */
+public class DateTypeAdapter extends TypeAdapter<Date> {
+	
+	
+	public static final String PATTERN = "dd-MM-yyyy";
+	
+	private static final int CACHE_BITS = 8;
+	private static final int CACHE_SIZE = 1 << CACHE_BITS;
+	
+	
+	private final DateFormat fallbackFormat = new SimpleDateFormat(PATTERN, Locale.getDefault());
+	
+	//Immutable entries, a racing read sees a whole entry, an older one or null
+	private final Entry[] parsed = new Entry[CACHE_SIZE];
+	private final Entry[] formatted = new Entry[CACHE_SIZE];
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// READ
+	///////////////////////////////////////////////////////////////////////////
+	
+	@Override
+	public Date read(JsonReader reader) throws IOException {
+		if( reader.peek() == JsonToken.NULL ){
+			reader.nextNull();
+			return null;
+		}
+		return new Date(parse(reader.nextString()));
+	}
+	
+	
+	long parse(String value) {
+		int slot = value.hashCode() & (CACHE_SIZE - 1);
+		Entry entry = parsed[slot];
+		if( entry != null && entry.text.equals(value) ){
+			return entry.millis;
+		}
+		
+		long millis = parseFallback(value).getTime();
+		parsed[slot] = new Entry(value, millis);
+		return millis;
+	}
+	
+	
+	private Date parseFallback(String value) {
+		synchronized (fallbackFormat) {
+			try {
+				return fallbackFormat.parse(value);
+			} catch (ParseException ignored) {
+			}
+		}
+		
+		try {
+			return ISO8601Utils.parse(value, new ParsePosition(0));
+		} catch (ParseException e) {
+			throw new JsonSyntaxException(value, e);
+		}
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// WRITE
+	///////////////////////////////////////////////////////////////////////////
+	
+	@Override
+	public void write(JsonWriter writer, Date value) throws IOException {
+		if( value == null ){
+			writer.nullValue();
+			return;
+		}
+		writer.value(format(value.getTime()));
+	}
+	
+	
+	String format(long millis) {
+		//Midnights share their low bits, the high bits of a multiplicative hash don't
+		int slot = (int) (millis ^ (millis >>> 32)) * 0x9E3779B9 >>> (32 - CACHE_BITS);
+		Entry entry = formatted[slot];
+		if( entry != null && entry.millis == millis ){
+			return entry.text;
+		}
+		
+		String text;
+		synchronized (fallbackFormat) {
+			text = fallbackFormat.format(new Date(millis));
+		}
+		formatted[slot] = new Entry(text, millis);
+		return text;
+	}
+	
+	
+	
+	
+	private static final class Entry {
+		
+		final String text;
+		final long millis;
+		
+		Entry(String text, long millis) {
+			this.text = text;
+			this.millis = millis;
+		}
+	}
+	
+}
@@ -4,7 +4,10 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.UnsupportedCharsetException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import okhttp3.Connection;
 import okhttp3.Headers;
@@ -18,7 +21,9 @@ import okhttp3.ResponseBody;
 import okhttp3.internal.http.HttpHeaders;
 import okhttp3.internal.platform.Platform;
 import okio.Buffer;
-import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
 
 import static okhttp3.internal.platform.Platform.INFO;
 
@@ -37,6 +42,18 @@ public class HttpLogInterceptor implements Interceptor {
         BODY_AND_HEADERS
     }
 
+    /** Which exchanges are logged at the chosen {@link Level}. */
+    public enum Condition {
+        /** Every exchange. */
+        ALWAYS,
+        /** One exchange every {@link #setSampleRate(int) sample rate}. */
+        SAMPLED,
+        /** Exchanges slower than the {@link #setSlowThresholdMs(long) threshold}, or failing after it. */
+        SLOW,
+        /** Exchanges that failed or answered a non 2xx code. */
+        FAILED
+    }
+
     public interface Logger {
         void log(String message);
 
@@ -49,6 +66,14 @@ public class HttpLogInterceptor implements Interceptor {
         };
     }
 
+    /**
+     * {@link HttpLogInterceptor.Logger} that receives all the lines of an exchange at once, when the
+     * exchange ends, instead of one call per line.
+     */
+    public interface ExchangeLogger extends Logger {
+        void logExchange(List<String> lines);
+    }
+
     public HttpLogInterceptor(HttpLogInterceptor.Logger logger) {
         this.logger = logger;
     }
@@ -57,6 +82,17 @@ public class HttpLogInterceptor implements Interceptor {
 
     private volatile HttpLogInterceptor.Level level = Level.DISABLE;
 
+    /** Default amount of body bytes captured for the log. */
+    public static final long DEFAULT_MAX_BODY_BYTES = 64 * 1024;
+
+    private volatile long maxBodyBytes = DEFAULT_MAX_BODY_BYTES;
+
+    private volatile HttpLogInterceptor.Condition condition = Condition.ALWAYS;
+    private volatile int sampleRate = 1;
+    private volatile long slowThresholdMs = 1000;
+    private final AtomicLong sampleCounter = new AtomicLong();
+    private volatile ConnectionPhaseMetrics connectionPhaseMetrics;
+
     /** Change the level at which this interceptor logs. */
     public HttpLogInterceptor setLevel(HttpLogInterceptor.Level level) {
         if (level == null) throw new NullPointerException("level == null. Use Level.NONE instead.");
@@ -64,41 +100,190 @@ public class HttpLogInterceptor implements Interceptor {
         return this;
     }
 
+    /**
+     * Change the amount of bytes of each body that is captured for the log. Bodies are never
+     * buffered beyond this limit, the rest is only counted while the converter streams it.
+     */
+    public HttpLogInterceptor setMaxBodyBytes(long maxBodyBytes) {
+        if (maxBodyBytes < 0) throw new IllegalArgumentException("maxBodyBytes < 0: " + maxBodyBytes);
+        this.maxBodyBytes = maxBodyBytes;
+        return this;
+    }
+
+    /** Change which exchanges are logged. */
+    public HttpLogInterceptor setCondition(HttpLogInterceptor.Condition condition) {
+        if (condition == null) throw new NullPointerException("condition == null. Use Condition.ALWAYS instead.");
+        this.condition = condition;
+        return this;
+    }
+
+    /** Log one exchange every {@code sampleRate} when the condition is {@link Condition#SAMPLED}. */
+    public HttpLogInterceptor setSampleRate(int sampleRate) {
+        if (sampleRate <= 0) throw new IllegalArgumentException("sampleRate <= 0: " + sampleRate);
+        this.sampleRate = sampleRate;
+        return this;
+    }
+
+    /** Minimum duration of an exchange logged when the condition is {@link Condition#SLOW}. */
+    public HttpLogInterceptor setSlowThresholdMs(long slowThresholdMs) {
+        if (slowThresholdMs < 0) throw new IllegalArgumentException("slowThresholdMs < 0: " + slowThresholdMs);
+        this.slowThresholdMs = slowThresholdMs;
+        return this;
+    }
+
+    /**
+     * Append the connection phases of the call to the response line, null to leave them out.
+     * The metrics must be the event listener factory of the client.
+     */
+    public HttpLogInterceptor setConnectionPhaseMetrics(ConnectionPhaseMetrics connectionPhaseMetrics) {
+        this.connectionPhaseMetrics = connectionPhaseMetrics;
+        return this;
+    }
+
     @Override
     public Response intercept(Chain chain) throws IOException {
         HttpLogInterceptor.Level level = this.level;
+        HttpLogInterceptor.Condition condition = this.condition;
+        long maxBodyBytes = this.maxBodyBytes;
 
         Request request = chain.request();
         if (level == Level.DISABLE) {
             return chain.proceed(request);
         }
 
+        if (condition == Condition.SAMPLED && sampleCounter.getAndIncrement() % sampleRate != 0) {
+            return chain.proceed(request);
+        }
+
+        // Slow and failed exchanges are only known at the end, nothing is built before that.
+        boolean deferred = condition == Condition.SLOW || condition == Condition.FAILED;
+
+        Exchange exchange = new Exchange(loggerOf(request));
+
         boolean logBody = ( level == Level.BODY_ONLY ) || (level == Level.BODY_AND_HEADERS);
         boolean logHeaders = ( level == Level.HEADERS_ONLY ) || (level == Level.BODY_AND_HEADERS);
 
+        if (!deferred) {
+            logRequest(exchange, chain, request, logBody, logHeaders, maxBodyBytes);
+        }
+
+        long startNs = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (Exception e) {
+            if (deferred) {
+                if (condition == Condition.SLOW && !isSlow(startNs)) {
+                    throw e;
+                }
+                logRequest(exchange, chain, request, logBody, logHeaders, maxBodyBytes);
+            }
+            exchange.log("");
+            exchange.log("<-- HTTP FAILED: " + e);
+            exchange.end();
+            throw e;
+        }
+        long tookMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
+
+        if (deferred) {
+            boolean qualifies = condition == Condition.SLOW
+                    ? tookMs >= slowThresholdMs
+                    : !response.isSuccessful();
+            if (!qualifies) {
+                return response;
+            }
+            logRequest(exchange, chain, request, logBody, logHeaders, maxBodyBytes);
+        }
+
+        ResponseBody responseBody = response.body();
+        long contentLength = responseBody.contentLength();
+        String bodySize = contentLength != -1 ? contentLength + "-byte" : "unknown-length";
+        String phases = connectionPhaseMetrics != null ? connectionPhaseMetrics.describe(chain.call()) : "";
+        
+        exchange.log("<-- " + response.code() + ' ' + response.message() + ' '
+                + response.request().url() + " (" + tookMs + "ms"
+                + (!phases.isEmpty() ? ", " + phases : "") + (!logHeaders ? ", "
+                + bodySize + " body" : "") + ')');
+
+        if (logHeaders) {
+            Headers headers = response.headers();
+            for (int i = 0, count = headers.size(); i < count; i++) {
+                exchange.log(headers.name(i) + ": " + headers.value(i));
+            }
+        }
+
+
+        if (!logBody || !HttpHeaders.hasBody(response)) {
+            exchange.log("");
+            exchange.log("<-- END HTTP");
+        } else if (bodyEncoded(response.headers())) {
+            exchange.log("");
+            exchange.log("<-- END HTTP (encoded body omitted)");
+        } else {
+            Charset charset = UTF8;
+            MediaType contentType = responseBody.contentType();
+            if (contentType != null) {
+                try {
+                    charset = contentType.charset(UTF8);
+                } catch (UnsupportedCharsetException e) {
+                    exchange.log("");
+                    exchange.log("Couldn't decode the response body; charset is likely malformed.");
+                    exchange.log("<-- END HTTP");
+                    exchange.end();
+
+                    return response;
+                }
+            }
+
+            // Tee the body while the converter streams it, the end of the log is written
+            // once the body is exhausted or closed.
+            BodyCaptureSource captureSource = new BodyCaptureSource(
+                    responseBody.source(), exchange, charset, maxBodyBytes);
+            return response.newBuilder()
+                    .body(ResponseBody.create(contentType, contentLength, Okio.buffer(captureSource)))
+                    .build();
+        }
+
+        exchange.log("");
+        exchange.end();
+        return response;
+    }
+
+    private void logRequest(Exchange exchange, Chain chain, Request request, boolean logBody,
+            boolean logHeaders, long maxBodyBytes) throws IOException {
         RequestBody requestBody = request.body();
         boolean hasRequestBody = requestBody != null;
 
+        // Compressed by the RequestCompressionInterceptor, the original body is logged
+        RequestCompressionInterceptor.GzipRequestBody gzipBody = requestBody instanceof RequestCompressionInterceptor.GzipRequestBody
+                ? (RequestCompressionInterceptor.GzipRequestBody) requestBody : null;
+
         Connection connection = chain.connection();
         Protocol protocol = connection != null ? connection.protocol() : Protocol.HTTP_1_1;
 	    String requestStartMessage = "--> HTTP STARTED -->  " + request.method() + " | " + request.url() + " | " + protocol;
      
-	    if( hasRequestBody && logBody ){
+	    if( gzipBody != null && logBody ){
+            long length = gzipBody.getSource().contentLength();
+            long compressedLength = gzipBody.contentLength();
+            requestStartMessage = requestStartMessage + " (" + (length != -1 ? length + "-byte" : "unknown-length")
+                    + " body, gzip " + (compressedLength != -1 ? compressedLength + " bytes" : "streamed") + ")";
+        }
+	    else if( hasRequestBody && logBody ){
             requestStartMessage = requestStartMessage + " (" + requestBody.contentLength() + "-byte body)";
         }
 
-        logger.log("");
-        logger.log(requestStartMessage);
+        exchange.log("");
+        exchange.log(requestStartMessage);
 
         if (logHeaders) {
             if (hasRequestBody) {
                 // Request body headers are only present when installed as a network interceptor. Force
                 // them to be included (when available) so there values are known.
                 if (requestBody.contentType() != null) {
-                    logger.log("Content-Type: " + requestBody.contentType());
+                    exchange.log("Content-Type: " + requestBody.contentType());
                 }
                 if (requestBody.contentLength() != -1) {
-                    logger.log("Content-Length: " + requestBody.contentLength());
+                    exchange.log("Content-Length: " + requestBody.contentLength());
                 }
             }
 
@@ -107,7 +292,7 @@ public class HttpLogInterceptor implements Interceptor {
                 String name = headers.name(i);
                 // Skip headers from the request body as they are explicitly logged above.
                 if (!"Content-Type".equalsIgnoreCase(name) && !"Content-Length".equalsIgnoreCase(name)) {
-                    logger.log(name + ": " + headers.value(i));
+                    exchange.log(name + ": " + headers.value(i));
                 }
             }
 
@@ -115,12 +300,12 @@ public class HttpLogInterceptor implements Interceptor {
 
 
         if (!logBody || !hasRequestBody) {
-            logger.log("");
-        } else if (bodyEncoded(request.headers())) {
-            logger.log("");
+            exchange.log("");
+        } else if (gzipBody == null && bodyEncoded(request.headers())) {
+            exchange.log("");
         } else {
             Buffer buffer = new Buffer();
-            requestBody.writeTo(buffer);
+            (gzipBody != null ? gzipBody.getSource() : requestBody).writeTo(buffer);
 
             Charset charset = UTF8;
             MediaType contentType = requestBody.contentType();
@@ -129,88 +314,144 @@ public class HttpLogInterceptor implements Interceptor {
             }
 
             if (isPlaintext(buffer)) {
-                logger.log(buffer.readString(charset));
-                logger.log("");
+                long bodySize = buffer.size();
+                exchange.log(buffer.readString(Math.min(bodySize, maxBodyBytes), charset));
+                if (bodySize > maxBodyBytes) {
+                    exchange.log("... (" + bodySize + "-byte body, " + maxBodyBytes + " bytes logged)");
+                }
+                exchange.log("");
             } else {
-                logger.log("");
+                exchange.log("");
             }
         }
+    }
 
-        long startNs = System.nanoTime();
-        Response response;
-        try {
-            response = chain.proceed(request);
-        } catch (Exception e) {
-            logger.log("");
-            logger.log("<-- HTTP FAILED: " + e);
-            throw e;
+    /**
+     * Logger of the model that executed the call, or the logger of this interceptor when the call
+     * was not executed by a model.
+     */
+    private HttpLogInterceptor.Logger loggerOf(Request request) {
+        RequestTag tag = RequestTag.of(request);
+        HttpLogInterceptor.Logger callLogger = tag != null ? tag.logger : null;
+        return callLogger != null ? callLogger : logger;
+    }
+
+    private boolean isSlow(long startNs) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs) >= slowThresholdMs;
+    }
+
+    /**
+     * Lines of one exchange, forwarded one by one to the logger or as a single record when the
+     * logger is an {@link ExchangeLogger}.
+     */
+    private static final class Exchange {
+        private final HttpLogInterceptor.Logger logger;
+        private final List<String> lines;
+
+        Exchange(HttpLogInterceptor.Logger logger) {
+            this.logger = logger;
+            this.lines = logger instanceof ExchangeLogger ? new ArrayList<String>() : null;
         }
-        long tookMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
 
-        ResponseBody responseBody = response.body();
-        long contentLength = responseBody.contentLength();
-        String bodySize = contentLength != -1 ? contentLength + "-byte" : "unknown-length";
-        
-        logger.log("<-- " + response.code() + ' ' + response.message() + ' '
-                + response.request().url() + " (" + tookMs + "ms" + (!logHeaders ? ", "
-                + bodySize + " body" : "") + ')');
+        void log(String message) {
+            if (lines != null) {
+                lines.add(message);
+            } else {
+                logger.log(message);
+            }
+        }
 
-        if (logHeaders) {
-            Headers headers = response.headers();
-            for (int i = 0, count = headers.size(); i < count; i++) {
-                logger.log(headers.name(i) + ": " + headers.value(i));
+        void end() {
+            if (lines != null && !lines.isEmpty()) {
+                ((ExchangeLogger) logger).logExchange(lines);
             }
         }
+    }
 
+    /**
+     * Source that copies at most {@code maxBytes} of the body into a capture buffer as it is read
+     * and counts the remaining bytes, logging the preview when the body is exhausted or closed.
+     */
+    private final class BodyCaptureSource extends ForwardingSource {
+        private final Buffer capture = new Buffer();
+        private final Exchange exchange;
+        private final Charset charset;
+        private final long maxBytes;
+        private long totalBytes;
+        private boolean finished;
+
+        BodyCaptureSource(Source delegate, Exchange exchange, Charset charset, long maxBytes) {
+            super(delegate);
+            this.exchange = exchange;
+            this.charset = charset;
+            this.maxBytes = maxBytes;
+        }
 
-        if (!logBody || !HttpHeaders.hasBody(response)) {
-            logger.log("");
-            logger.log("<-- END HTTP");
-        } else if (bodyEncoded(response.headers())) {
-            logger.log("");
-            logger.log("<-- END HTTP (encoded body omitted)");
-        } else {
-            BufferedSource source = responseBody.source();
-            source.request(Long.MAX_VALUE); // Buffer the entire body.
-            Buffer buffer = source.buffer();
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            long read;
+            try {
+                read = super.read(sink, byteCount);
+            } catch (IOException e) {
+                finish("<-- END HTTP (body read failed after " + totalBytes + " bytes: " + e + ")");
+                throw e;
+            }
 
-            Charset charset = UTF8;
-            MediaType contentType = responseBody.contentType();
-            if (contentType != null) {
-                try {
-                    charset = contentType.charset(UTF8);
-                } catch (UnsupportedCharsetException e) {
-                    logger.log("");
-                    logger.log("Couldn't decode the response body; charset is likely malformed.");
-                    logger.log("<-- END HTTP");
+            if (read == -1) {
+                finish(null);
+                return -1;
+            }
 
-                    return response;
-                }
+            long remaining = maxBytes - capture.size();
+            if (remaining > 0) {
+                sink.copyTo(capture, sink.size() - read, Math.min(read, remaining));
             }
+            totalBytes += read;
+            return read;
+        }
 
-            if (!isPlaintext(buffer)) {
-                logger.log("");
-                logger.log("<-- END HTTP (binary " + buffer.size() + "-byte body omitted)");
-                return response;
+        @Override
+        public void close() throws IOException {
+            finish(null);
+            super.close();
+        }
+
+        private void finish(String failure) {
+            if (finished) {
+                return;
             }
+            finished = true;
+
+            if (failure != null) {
+                exchange.log("");
+                exchange.log(failure);
+            } else if (!isPlaintext(capture)) {
+                exchange.log("");
+                exchange.log("<-- END HTTP (binary " + totalBytes + "-byte body omitted)");
+            } else {
+                if (capture.size() != 0) {
+                    exchange.log(capture.readString(charset));
+                }
 
-            if (contentLength != 0) {
-                logger.log(buffer.clone().readString(charset));
+                exchange.log("");
+                if (totalBytes > maxBytes) {
+                    exchange.log("<-- END HTTP (" + totalBytes + "-byte body, " + maxBytes + " bytes logged)");
+                } else {
+                    exchange.log("<-- END HTTP (" + totalBytes + "-byte body)");
+                }
             }
 
-            logger.log("");
-            logger.log("<-- END HTTP (" + buffer.size() + "-byte body)");
+            capture.clear();
+            exchange.log("");
+            exchange.end();
         }
-
-        logger.log("");
-        return response;
     }
 
     /**
      * Returns true if the body in question probably contains human readable text. Uses a small sample
      * of code points to detect unicode control characters commonly used in binary file signatures.
      */
-    private static boolean isPlaintext(Buffer buffer) {
+    static boolean isPlaintext(Buffer buffer) {
         try {
             Buffer prefix = new Buffer();
             long byteCount = buffer.size() < 64 ? buffer.size() : 64;
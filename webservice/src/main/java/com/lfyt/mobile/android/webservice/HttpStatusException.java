@@ -0,0 +1,34 @@
+package com.lfyt.mobile.android.webservice;
+
+import java.io.IOException;
+
+import retrofit2.Response;
+
+/**
+ * Delivered by executeAsync and executeSync when the response code is not a success,
+ * after the model classified it with onRedirect, onClientError or onServerError
+ */
+public class HttpStatusException extends IOException {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private final int code;
+	
+	//Not serialized, null once deserialized
+	private final transient Response<?> response;
+	
+	public HttpStatusException(Response<?> response) {
+		super("HTTP " + response.code() + " " + response.message());
+		this.code = response.code();
+		this.response = response;
+	}
+	
+	public int getCode() {
+		return code;
+	}
+	
+	public Response<?> getResponse() {
+		return response;
+	}
+	
+}
@@ -0,0 +1,176 @@
+package com.lfyt.mobile.android.webservice;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-bucketed latency histogram in microseconds.
+ *
+ * Every power of two is split in {@link #SUB_BUCKETS} linear buckets, so a percentile is
+ * reported with at most 12.5% of error. Recording never allocates and never locks.
+ */
+public class LatencyHistogram {
+	
+	
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	
+	//Enough buckets to hold Long.MAX_VALUE micros
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+	
+	
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong sumMicros = new AtomicLong();
+	private final AtomicLong maxMicros = new AtomicLong();
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// RECORD
+	///////////////////////////////////////////////////////////////////////////
+	
+	public void recordNanos(long nanos) {
+		long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+		if( micros < 0 ){
+			micros = 0;
+		}
+		
+		buckets.incrementAndGet(bucketOf(micros));
+		sumMicros.addAndGet(micros);
+		
+		long max = maxMicros.get();
+		while( micros > max && !maxMicros.compareAndSet(max, micros) ){
+			max = maxMicros.get();
+		}
+	}
+	
+	
+	static int bucketOf(long micros) {
+		if( micros < SUB_BUCKETS ){
+			return (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+	
+	
+	/**
+	 * Highest value that falls in the bucket
+	 */
+	static long upperBoundOf(int bucket) {
+		if( bucket < SUB_BUCKETS ){
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = bucket % SUB_BUCKETS;
+		long lowerBound = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+		return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// SNAPSHOT
+	///////////////////////////////////////////////////////////////////////////
+	
+	public Snapshot snapshot() {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		
+		long max = maxMicros.get();
+		return new Snapshot(
+				total,
+				total == 0 ? 0 : sumMicros.get() / total,
+				percentile(counts, total, 0.50, max),
+				percentile(counts, total, 0.95, max),
+				percentile(counts, total, 0.99, max),
+				percentile(counts, total, 0.999, max),
+				max
+		);
+	}
+	
+	
+	private static long percentile(long[] counts, long total, double percentile, long max) {
+		if( total == 0 ){
+			return 0;
+		}
+		
+		long rank = (long) Math.ceil(total * percentile);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if( seen >= rank ){
+				return Math.min(upperBoundOf(i), max);
+			}
+		}
+		return max;
+	}
+	
+	
+	/**
+	 * Latency values in microseconds
+	 */
+	public static class Snapshot {
+		
+		private final long count;
+		private final long mean;
+		private final long p50;
+		private final long p95;
+		private final long p99;
+		private final long p999;
+		private final long max;
+		
+		Snapshot(long count, long mean, long p50, long p95, long p99, long p999, long max) {
+			this.count = count;
+			this.mean = mean;
+			this.p50 = p50;
+			this.p95 = p95;
+			this.p99 = p99;
+			this.p999 = p999;
+			this.max = max;
+		}
+		
+		public long getCount() {
+			return count;
+		}
+		
+		public long getMean() {
+			return mean;
+		}
+		
+		public long getP50() {
+			return p50;
+		}
+		
+		public long getP95() {
+			return p95;
+		}
+		
+		public long getP99() {
+			return p99;
+		}
+		
+		public long getP999() {
+			return p999;
+		}
+		
+		public long getMax() {
+			return max;
+		}
+		
+		@Override
+		public String toString() {
+			return "count=" + count + " mean=" + mean + "us p50=" + p50 + "us p95=" + p95
+					+ "us p99=" + p99 + "us p999=" + p999 + "us max=" + max + "us";
+		}
+	}
+	
+}
@@ -0,0 +1,26 @@
+package com.lfyt.mobile.android.webservice;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the tasks on the main thread, right away when already on it
+ */
+public class MainThreadExecutor implements Executor {
+	
+	
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	
+	
+	@Override
+	public void execute(Runnable command) {
+		if( Looper.myLooper() == Looper.getMainLooper() ){
+			command.run();
+			return;
+		}
+		handler.post(command);
+	}
+	
+}
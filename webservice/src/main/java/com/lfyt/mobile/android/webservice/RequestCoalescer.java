@@ -0,0 +1,149 @@
+package com.lfyt.mobile.android.webservice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Single flight of identical idempotent requests.
+ *
+ * The first caller of a key executes the request, the following ones attach to it and receive
+ * the same decoded response through their own callback when it arrives. Decoded bodies are shared
+ * between the callers, so they must be treated as immutable.
+ */
+public class RequestCoalescer {
+	
+	
+	private final Map<String, List<Follower>> flights = new HashMap<>();
+	
+	private final AtomicLong coalescedCount = new AtomicLong();
+	
+	
+	/**
+	 * @param promotion run when the caller was attached and becomes the leader because the leader was cancelled
+	 * @return true if the caller leads the flight and must execute the request,
+	 * false if it was attached to a request already in flight
+	 */
+	public synchronized boolean join(String key, Call<?> call, Callback<?> callback, Runnable promotion) {
+		List<Follower> followers = flights.get(key);
+		if( followers == null ){
+			flights.put(key, new ArrayList<Follower>());
+			return true;
+		}
+		
+		followers.add(new Follower(call, callback, promotion));
+		coalescedCount.incrementAndGet();
+		return false;
+	}
+	
+	
+	/**
+	 * Detach a cancelled follower, nothing is delivered to it by the flight afterwards
+	 * @return false if the call is not attached to the flight, because it leads it or it already ended
+	 */
+	public synchronized boolean leave(String key, Call<?> call) {
+		List<Follower> followers = flights.get(key);
+		if( followers == null ){
+			return false;
+		}
+		
+		for (int i = 0, count = followers.size(); i < count; i++) {
+			if( followers.get(i).call == call ){
+				followers.remove(i);
+				coalescedCount.decrementAndGet();
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	
+	/**
+	 * Leader cancelled, detach the first follower that must now execute its own request with
+	 * {@link Follower#lead()} for the others. The flight ends when there is no follower left
+	 */
+	public synchronized Follower promote(String key) {
+		List<Follower> followers = flights.get(key);
+		if( followers == null ){
+			return null;
+		}
+		
+		if( followers.isEmpty() ){
+			flights.remove(key);
+			return null;
+		}
+		
+		coalescedCount.decrementAndGet();
+		return followers.remove(0);
+	}
+	
+	
+	/**
+	 * End the flight, the next caller of the key will start a new request
+	 */
+	public synchronized List<Follower> complete(String key) {
+		List<Follower> followers = flights.remove(key);
+		return followers == null ? Collections.<Follower>emptyList() : followers;
+	}
+	
+	
+	/**
+	 * Requests that did not go to the network because an identical one was in flight
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// DELIVERY
+	///////////////////////////////////////////////////////////////////////////
+	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	static void deliverResponse(List<Follower> followers, Response<?> response) {
+		for (int i = 0, count = followers.size(); i < count; i++) {
+			Follower follower = followers.get(i);
+			((Callback) follower.callback).onResponse(follower.call, response);
+		}
+	}
+	
+	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	static void deliverFailure(List<Follower> followers, Throwable error) {
+		for (int i = 0, count = followers.size(); i < count; i++) {
+			Follower follower = followers.get(i);
+			((Callback) follower.callback).onFailure(follower.call, error);
+		}
+	}
+	
+	
+	public static final class Follower {
+		
+		final Call<?> call;
+		final Callback<?> callback;
+		private final Runnable promotion;
+		
+		Follower(Call<?> call, Callback<?> callback, Runnable promotion) {
+			this.call = call;
+			this.callback = callback;
+			this.promotion = promotion;
+		}
+		
+		/**
+		 * Execute the request of the follower promoted to leader
+		 */
+		public void lead() {
+			promotion.run();
+		}
+	}
+	
+}
@@ -0,0 +1,258 @@
+package com.lfyt.mobile.android.webservice;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ByteString;
+import okio.GzipSink;
+import okio.Okio;
+
+/**
+ * Gzip request bodies of the hosts and endpoints registered with {@link #compressHost} and
+ * {@link #compressPath} when they are over the byte threshold.
+ *
+ * Bodies of known length are compressed in memory and sent with their compressed length, bodies of
+ * unknown length are compressed while they are written. A host answering 415 to a compressed
+ * request is remembered and no longer receives compressed bodies, the request is sent again
+ * uncompressed when its body can be written twice.
+ */
+public class RequestCompressionInterceptor implements Interceptor {
+	
+	
+	public static final long DEFAULT_MIN_BYTES = 1024;
+	
+	private static final int UNSUPPORTED_MEDIA_TYPE = 415;
+	
+	
+	private final List<Rule> pathRules = new CopyOnWriteArrayList<>();
+	private final List<Rule> hostRules = new CopyOnWriteArrayList<>();
+	
+	private final Set<String> rejectingHosts = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	
+	private final AtomicLong compressedCount = new AtomicLong();
+	private final AtomicLong uncompressedBytes = new AtomicLong();
+	private final AtomicLong compressedBytes = new AtomicLong();
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// RULES
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Compress the bodies sent to the host over minBytes
+	 */
+	public RequestCompressionInterceptor compressHost(String host, long minBytes) {
+		hostRules.add(new Rule(host, minBytes));
+		return this;
+	}
+	
+	
+	/**
+	 * Compress the bodies sent to paths starting with the prefix over minBytes, path rules win over host rules
+	 */
+	public RequestCompressionInterceptor compressPath(String pathPrefix, long minBytes) {
+		pathRules.add(new Rule(pathPrefix, minBytes));
+		return this;
+	}
+	
+	
+	/**
+	 * Threshold of the request, -1 when it must not be compressed
+	 */
+	private long minBytesOf(Request request) {
+		String path = request.url().encodedPath();
+		for (Rule rule : pathRules) {
+			if( path.startsWith(rule.key) ){
+				return rule.minBytes;
+			}
+		}
+		
+		String host = request.url().host();
+		for (Rule rule : hostRules) {
+			if( host.equals(rule.key) ){
+				return rule.minBytes;
+			}
+		}
+		return -1;
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// INTERCEPT
+	///////////////////////////////////////////////////////////////////////////
+	
+	@Override
+	public Response intercept(Chain chain) throws IOException {
+		Request request = chain.request();
+		RequestBody body = request.body();
+		if( body == null || request.header("Content-Encoding") != null || rejectingHosts.contains(request.url().host()) ){
+			return chain.proceed(request);
+		}
+		
+		long minBytes = minBytesOf(request);
+		long length = body.contentLength();
+		if( minBytes < 0 || (length != -1 && length < minBytes) ){
+			return chain.proceed(request);
+		}
+		
+		GzipRequestBody gzipBody;
+		if( length != -1 ){
+			gzipBody = GzipRequestBody.buffered(body);
+			
+			//Incompressible content, like images
+			if( gzipBody.contentLength() >= length ){
+				return chain.proceed(request);
+			}
+			compressedCount.incrementAndGet();
+			uncompressedBytes.addAndGet(length);
+			compressedBytes.addAndGet(gzipBody.contentLength());
+		}
+		else{
+			gzipBody = GzipRequestBody.streaming(body);
+			compressedCount.incrementAndGet();
+		}
+		
+		Response response = chain.proceed(request.newBuilder()
+				.header("Content-Encoding", "gzip")
+				.method(request.method(), gzipBody)
+				.build());
+		
+		if( response.code() != UNSUPPORTED_MEDIA_TYPE ){
+			return response;
+		}
+		
+		rejectingHosts.add(request.url().host());
+		if( length == -1 ){
+			return response;
+		}
+		response.close();
+		return chain.proceed(request);
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// STATS
+	///////////////////////////////////////////////////////////////////////////
+	
+	public long getCompressedCount() {
+		return compressedCount.get();
+	}
+	
+	/**
+	 * Bytes of the bodies compressed in memory before and after compression
+	 */
+	public long getUncompressedBytes() {
+		return uncompressedBytes.get();
+	}
+	
+	public long getCompressedBytes() {
+		return compressedBytes.get();
+	}
+	
+	/**
+	 * Hosts that rejected a compressed body
+	 */
+	public Set<String> getRejectingHosts() {
+		return Collections.unmodifiableSet(rejectingHosts);
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// BODY
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Gzip encoded view of a body, the original body stays available for logging
+	 */
+	public static final class GzipRequestBody extends RequestBody {
+		
+		private final RequestBody source;
+		private final ByteString compressed;
+		
+		private GzipRequestBody(RequestBody source, ByteString compressed) {
+			this.source = source;
+			this.compressed = compressed;
+		}
+		
+		
+		static GzipRequestBody buffered(RequestBody source) throws IOException {
+			Buffer buffer = new Buffer();
+			BufferedSink gzipSink = Okio.buffer(new GzipSink(buffer));
+			source.writeTo(gzipSink);
+			gzipSink.close();
+			return new GzipRequestBody(source, buffer.readByteString());
+		}
+		
+		
+		static GzipRequestBody streaming(RequestBody source) {
+			return new GzipRequestBody(source, null);
+		}
+		
+		
+		public RequestBody getSource() {
+			return source;
+		}
+		
+		
+		@Override
+		public MediaType contentType() {
+			return source.contentType();
+		}
+		
+		
+		/**
+		 * Compressed length, -1 when compressed while written
+		 */
+		@Override
+		public long contentLength() {
+			return compressed != null ? compressed.size() : -1;
+		}
+		
+		
+		@Override
+		public void writeTo(BufferedSink sink) throws IOException {
+			if( compressed != null ){
+				sink.write(compressed);
+				return;
+			}
+			
+			//Closing the gzip sink writes the trailer, the request sink is closed by OkHttp anyway
+			BufferedSink gzipSink = Okio.buffer(new GzipSink(sink));
+			source.writeTo(gzipSink);
+			gzipSink.close();
+		}
+	}
+	
+	
+	private static final class Rule {
+		
+		final String key;
+		final long minBytes;
+		
+		Rule(String key, long minBytes) {
+			this.key = key;
+			this.minBytes = minBytes;
+		}
+	}
+	
+}
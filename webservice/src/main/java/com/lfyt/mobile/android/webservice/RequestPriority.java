@@ -0,0 +1,42 @@
+package com.lfyt.mobile.android.webservice;
+
+/**
+ * Priority of a request when its host is at the concurrency limit.
+ *
+ * Queued requests are started in priority order, and part of the limit of each host is kept
+ * for the higher priorities so prefetches never take every slot.
+ * Priorities are applied by the {@link ConcurrencyLimiter}, without it every request is sent to
+ * the dispatcher right away and the priority has no effect.
+ */
+public enum RequestPriority {
+	
+	/**
+	 * The user is waiting on it, can take every slot of the host
+	 */
+	CRITICAL(1f),
+	
+	/**
+	 * Default priority of executeRequest
+	 */
+	NORMAL(0.9f),
+	
+	/**
+	 * Data that may be needed later, limited to half of the slots
+	 */
+	PREFETCH(0.5f);
+	
+	
+	private final float capacity;
+	
+	RequestPriority(float capacity) {
+		this.capacity = capacity;
+	}
+	
+	/**
+	 * Fraction of the host limit that requests of this priority can use
+	 */
+	public float getCapacity() {
+		return capacity;
+	}
+	
+}
@@ -0,0 +1,23 @@
+package com.lfyt.mobile.android.webservice;
+
+import java.io.IOException;
+
+/**
+ * Delivered to onFailure when a request waited longer than the queue timeout for a slot of its host
+ */
+public class RequestQueueTimeoutException extends IOException {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private final String host;
+	
+	public RequestQueueTimeoutException(String host) {
+		super("Queue timeout waiting for " + host);
+		this.host = host;
+	}
+	
+	public String getHost() {
+		return host;
+	}
+	
+}
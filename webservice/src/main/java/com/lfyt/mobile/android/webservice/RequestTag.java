@@ -0,0 +1,50 @@
+package com.lfyt.mobile.android.webservice;
+
+import okhttp3.Call;
+import okhttp3.Request;
+
+/**
+ * State of one call carried as a tag of its request. Interceptors rebuilding the request with
+ * newBuilder() keep the tag, so every layer of the chain finds the model that executed the call
+ */
+final class RequestTag {
+	
+	//Http log of the model that executed the call
+	volatile HttpLogInterceptor.Logger logger;
+	
+	//Receives the elements of a streamed array, set by StreamingJsonConverterFactory.register
+	volatile StreamingJsonConverterFactory.ChunkListener chunkListener;
+	
+	//Body of the response as read by the converter, counted to weigh the decoded response
+	volatile CountingSource responseBody;
+	
+	//Round trip of the last exchange with the server, measured by the ConcurrencyLimiter interceptor
+	volatile long rttNanos = -1;
+	
+	
+	static RequestTag of(Request request) {
+		return request.tag(RequestTag.class);
+	}
+	
+	
+	/**
+	 * Call factory of the services, tags every request before its call is created
+	 */
+	static final class Factory implements Call.Factory {
+		
+		private final Call.Factory delegate;
+		
+		Factory(Call.Factory delegate) {
+			this.delegate = delegate;
+		}
+		
+		@Override
+		public Call newCall(Request request) {
+			if( of(request) != null ){
+				return delegate.newCall(request);
+			}
+			return delegate.newCall(request.newBuilder().tag(RequestTag.class, new RequestTag()).build());
+		}
+	}
+	
+}
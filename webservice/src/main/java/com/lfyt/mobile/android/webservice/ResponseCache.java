@@ -0,0 +1,287 @@
+package com.lfyt.mobile.android.webservice;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Headers;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Okio;
+
+/**
+ * In memory LRU of decoded responses with time to live.
+ *
+ * Entries are weighted by the size of the body they were decoded from, the least recently used
+ * ones are evicted when the total weight is over the limit. Cached objects are shared by every
+ * model that requests the same key, so they must be treated as immutable.
+ *
+ * Keys are built before the request goes through the interceptors, responses that depend on headers
+ * added by an interceptor, like the token of the user, are kept in the partition of that user.
+ */
+public class ResponseCache {
+	
+	
+	public static final long DEFAULT_MAX_BYTES = 2 * 1024 * 1024;
+	
+	//Weight of a body that was not counted
+	private static final long UNKNOWN_WEIGHT = 16 * 1024;
+	
+	
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	
+	private long maxBytes;
+	private long size;
+	
+	//Last partition used, the entries are evicted when it changes
+	private String partition;
+	
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+	
+	
+	public ResponseCache(long maxBytes) {
+		if( maxBytes <= 0 ) throw new IllegalArgumentException("maxBytes <= 0: " + maxBytes);
+		this.maxBytes = maxBytes;
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// KEY
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Partition, type the body is decoded to, method, url and the values of the headers that change the decoded response
+	 * @param partition identity of the user the response belongs to, null for responses that are the same for everyone
+	 */
+	public static String keyOf(Request request, Type responseType, String partition, List<String> headerNames) {
+		StringBuilder key = new StringBuilder();
+		if( partition != null ){
+			key.append(partition).append('\n');
+		}
+		key.append(responseType).append('\n')
+				.append(request.method()).append(' ').append(request.url());
+		
+		Headers headers = request.headers();
+		for (int i = 0, count = headerNames.size(); i < count; i++) {
+			String value = headers.get(headerNames.get(i));
+			if( value != null ){
+				key.append('\n').append(headerNames.get(i)).append(": ").append(value);
+			}
+		}
+		return key.toString();
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// ACCESS
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Switch to the responses of another user, every entry is evicted when the partition is not the last one used.
+	 * Null is the partition of the responses that are the same for everyone, it does not evict anything
+	 */
+	public synchronized void usePartition(String partition) {
+		if( partition == null || partition.equals(this.partition) ){
+			return;
+		}
+		if( this.partition != null ){
+			evictAll();
+		}
+		this.partition = partition;
+	}
+	
+	
+	/**
+	 * Fresh decoded object for the key or null
+	 */
+	public synchronized Object get(String key) {
+		Entry entry = entries.get(key);
+		if( entry == null ){
+			missCount++;
+			return null;
+		}
+		
+		if( System.nanoTime() - entry.expiresAtNanos > 0 ){
+			remove(key);
+			missCount++;
+			return null;
+		}
+		
+		hitCount++;
+		return entry.value;
+	}
+	
+	
+	/**
+	 * @param path encoded path of the request, used by {@link #invalidate(String)}
+	 * @param bodyBytes bytes of the body the value was decoded from, -1 if unknown
+	 */
+	public synchronized void put(String key, String path, Object value, long bodyBytes, long ttlMs) {
+		long weight = bodyBytes < 0 ? UNKNOWN_WEIGHT : bodyBytes;
+		if( weight > maxBytes ){
+			return;
+		}
+		
+		remove(key);
+		entries.put(key, new Entry(path, value, weight, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMs)));
+		size += weight;
+		trimToSize(maxBytes);
+	}
+	
+	
+	/**
+	 * Remove every entry whose path starts with the prefix
+	 */
+	public synchronized void invalidate(String pathPrefix) {
+		Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+		while( iterator.hasNext() ){
+			Entry entry = iterator.next().getValue();
+			if( entry.path.startsWith(pathPrefix) ){
+				size -= entry.weight;
+				iterator.remove();
+			}
+		}
+	}
+	
+	
+	public synchronized void evictAll() {
+		entries.clear();
+		size = 0;
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// WEIGHT
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Counts the bytes of the body read by the converter, they weigh the decoded response.
+	 * The body is counted after gzip, chunked bodies and bodies without length included
+	 */
+	Interceptor newInterceptor() {
+		return new Interceptor() {
+			@Override
+			public Response intercept(Chain chain) throws IOException {
+				Response response = chain.proceed(chain.request());
+				RequestTag tag = RequestTag.of(chain.request());
+				ResponseBody body = response.body();
+				if( tag == null || body == null ){
+					return response;
+				}
+				
+				CountingSource source = new CountingSource(body.source());
+				tag.responseBody = source;
+				return response.newBuilder()
+						.body(ResponseBody.create(body.contentType(), body.contentLength(), Okio.buffer(source)))
+						.build();
+			}
+		};
+	}
+	
+	
+	/**
+	 * Bytes of the body read for the request, -1 when they were not counted
+	 */
+	static long bodyBytesOf(Request request) {
+		RequestTag tag = RequestTag.of(request);
+		CountingSource source = tag != null ? tag.responseBody : null;
+		return source != null ? source.count : -1;
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// SIZE
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Evict the least recently used entries until the total weight fits, call it from
+	 * onTrimMemory to release memory under pressure
+	 */
+	public synchronized void trimToSize(long maxBytes) {
+		Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+		while( size > maxBytes && iterator.hasNext() ){
+			size -= iterator.next().getValue().weight;
+			iterator.remove();
+			evictionCount++;
+		}
+	}
+	
+	
+	public synchronized void setMaxBytes(long maxBytes) {
+		if( maxBytes <= 0 ) throw new IllegalArgumentException("maxBytes <= 0: " + maxBytes);
+		this.maxBytes = maxBytes;
+		trimToSize(maxBytes);
+	}
+	
+	
+	private void remove(String key) {
+		Entry previous = entries.remove(key);
+		if( previous != null ){
+			size -= previous.weight;
+		}
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// STATS
+	///////////////////////////////////////////////////////////////////////////
+	
+	public synchronized long getSize() {
+		return size;
+	}
+	
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+	
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+	
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return "entries=" + entries.size() + " size=" + size + "/" + maxBytes + " hits=" + hitCount
+				+ " misses=" + missCount + " evictions=" + evictionCount;
+	}
+	
+	
+	
+	
+	private static final class Entry {
+		
+		final String path;
+		final Object value;
+		final long weight;
+		final long expiresAtNanos;
+		
+		Entry(String path, Object value, long weight, long expiresAtNanos) {
+			this.path = path;
+			this.value = value;
+			this.weight = weight;
+			this.expiresAtNanos = expiresAtNanos;
+		}
+	}
+	
+}
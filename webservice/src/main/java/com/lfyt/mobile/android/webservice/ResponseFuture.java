@@ -0,0 +1,242 @@
+package com.lfyt.mobile.android.webservice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import retrofit2.Call;
+
+/**
+ * Result of a request executed with executeAsync.
+ *
+ * Completed by the model once the response or the failure went through its usual classification.
+ * Waiting only parks on a latch, no monitor is held, so a virtual thread unmounts while it waits.
+ * Listeners run on the thread that completes the future, or right away when already done.
+ */
+public class ResponseFuture<T> implements Future<T> {
+	
+	
+	public interface Listener<T> {
+		
+		void onSuccess(T body);
+		
+		/**
+		 * The failure of the request, an HttpStatusException for a non success code
+		 */
+		void onError(Throwable error);
+	}
+	
+	
+	private final Call<?> call;
+	private final List<ResponseFuture<?>> children;
+	
+	private final CountDownLatch done = new CountDownLatch(1);
+	private final AtomicInteger state = new AtomicInteger(PENDING);
+	private volatile T body;
+	private volatile Throwable error;
+	
+	private List<Listener<? super T>> listeners = new ArrayList<>();
+	
+	private static final int PENDING = 0;
+	private static final int COMPLETING = 1;
+	private static final int SUCCEEDED = 2;
+	private static final int FAILED = 3;
+	private static final int CANCELLED = 4;
+	
+	
+	ResponseFuture(Call<?> call) {
+		this(call, Collections.<ResponseFuture<?>>emptyList());
+	}
+	
+	private ResponseFuture(Call<?> call, List<ResponseFuture<?>> children) {
+		this.call = call;
+		this.children = children;
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// COMPLETION
+	///////////////////////////////////////////////////////////////////////////
+	
+	boolean complete(T body) {
+		if( !state.compareAndSet(PENDING, COMPLETING) ){
+			return false;
+		}
+		this.body = body;
+		finish(SUCCEEDED);
+		return true;
+	}
+	
+	
+	boolean completeExceptionally(Throwable error) {
+		if( !state.compareAndSet(PENDING, COMPLETING) ){
+			return false;
+		}
+		this.error = error;
+		finish(FAILED);
+		return true;
+	}
+	
+	
+	private void finish(int finalState) {
+		state.set(finalState);
+		done.countDown();
+		
+		List<Listener<? super T>> completed;
+		synchronized (this) {
+			completed = listeners;
+			listeners = null;
+		}
+		for (Listener<? super T> listener : completed) {
+			deliver(listener);
+		}
+	}
+	
+	
+	/**
+	 * Called once with the result, on the completing thread or right away when already done
+	 */
+	public ResponseFuture<T> addListener(Listener<? super T> listener) {
+		synchronized (this) {
+			if( listeners != null ){
+				listeners.add(listener);
+				return this;
+			}
+		}
+		deliver(listener);
+		return this;
+	}
+	
+	
+	private void deliver(Listener<? super T> listener) {
+		if( state.get() == SUCCEEDED ){
+			listener.onSuccess(body);
+		}
+		else{
+			listener.onError(error);
+		}
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// FUTURE
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Cancel the call, the model still receives its failure in onFailure
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		if( !state.compareAndSet(PENDING, COMPLETING) ){
+			return false;
+		}
+		error = new CancellationException("Request cancelled");
+		finish(CANCELLED);
+		
+		if( call != null ){
+			call.cancel();
+		}
+		for (ResponseFuture<?> child : children) {
+			child.cancel(mayInterruptIfRunning);
+		}
+		return true;
+	}
+	
+	
+	@Override
+	public boolean isCancelled() {
+		return state.get() == CANCELLED;
+	}
+	
+	
+	@Override
+	public boolean isDone() {
+		return state.get() > COMPLETING;
+	}
+	
+	
+	@Override
+	public T get() throws InterruptedException, ExecutionException {
+		done.await();
+		return result();
+	}
+	
+	
+	@Override
+	public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if( !done.await(timeout, unit) ){
+			throw new TimeoutException();
+		}
+		return result();
+	}
+	
+	
+	private T result() throws ExecutionException {
+		switch (state.get()) {
+			case SUCCEEDED:
+				return body;
+			case CANCELLED:
+				throw (CancellationException) error;
+			default:
+				throw new ExecutionException(error);
+		}
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// FAN IN
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Bodies of every future in the same order, fails with the first error and cancels the others.
+	 * Cancelling the returned future cancels every request
+	 */
+	public static <T> ResponseFuture<List<T>> allOf(final List<ResponseFuture<T>> futures) {
+		final ResponseFuture<List<T>> all = new ResponseFuture<List<T>>(null, new ArrayList<ResponseFuture<?>>(futures));
+		if( futures.isEmpty() ){
+			all.complete(Collections.<T>emptyList());
+			return all;
+		}
+		
+		final AtomicInteger pending = new AtomicInteger(futures.size());
+		for (ResponseFuture<T> future : futures) {
+			future.addListener(new Listener<T>() {
+				@Override
+				public void onSuccess(T body) {
+					if( pending.decrementAndGet() != 0 ){
+						return;
+					}
+					List<T> bodies = new ArrayList<>(futures.size());
+					for (ResponseFuture<T> completed : futures) {
+						bodies.add(completed.body);
+					}
+					all.complete(bodies);
+				}
+				
+				@Override
+				public void onError(Throwable error) {
+					if( all.completeExceptionally(error) ){
+						for (ResponseFuture<T> other : futures) {
+							other.cancel(false);
+						}
+					}
+				}
+			});
+		}
+		return all;
+	}
+	
+}
@@ -0,0 +1,273 @@
+package com.lfyt.mobile.android.webservice;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import retrofit2.Call;
+
+/**
+ * Single subscriber publisher of decoded responses or streamed elements, driven by the demand
+ * of its subscriber with the same contract as Reactive Streams.
+ *
+ * Nothing is requested or decoded ahead of the demand: pages are only requested once the
+ * subscriber asked for them, and streamed elements block the thread reading the response until
+ * they are requested, so a slow subscriber pauses the network read.
+ */
+public abstract class ResponsePublisher<E> {
+	
+	
+	public interface Subscriber<E> {
+		
+		void onSubscribe(Subscription subscription);
+		
+		void onNext(E item);
+		
+		void onError(Throwable error);
+		
+		void onComplete();
+	}
+	
+	
+	public interface Subscription {
+		
+		/**
+		 * Ask for n more items, n must be positive
+		 */
+		void request(long n);
+		
+		/**
+		 * Stop the items, the request in flight is cancelled
+		 */
+		void cancel();
+	}
+	
+	
+	/**
+	 * Requests of a paginated or polled feed
+	 */
+	public interface PageSource<T> {
+		
+		/**
+		 * Call of the page after the previous one, null for the first, return null when there
+		 * is nothing left. A polling source returns a clone of the same call every time
+		 */
+		Call<T> next(T previous);
+	}
+	
+	
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition demanded = lock.newCondition();
+	
+	private Subscriber<? super E> subscriber;
+	private long demand;
+	//The source is delivering an item, it asks for the next one itself when next returns
+	private boolean emitting;
+	private boolean cancelled;
+	private boolean terminated;
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// SUBSCRIPTION
+	///////////////////////////////////////////////////////////////////////////
+	
+	public void subscribe(Subscriber<? super E> subscriber) {
+		boolean first;
+		lock.lock();
+		try {
+			first = this.subscriber == null;
+			if( first ){
+				this.subscriber = subscriber;
+			}
+		} finally {
+			lock.unlock();
+		}
+		
+		subscriber.onSubscribe(first ? new Subscription() {
+			@Override
+			public void request(long n) {
+				ResponsePublisher.this.request(n);
+			}
+			
+			@Override
+			public void cancel() {
+				ResponsePublisher.this.cancel();
+			}
+		} : CANCELLED);
+		
+		if( !first ){
+			subscriber.onError(new IllegalStateException("ResponsePublisher only accepts one subscriber"));
+		}
+	}
+	
+	
+	private void request(long n) {
+		if( n <= 0 ){
+			error(new IllegalArgumentException("request <= 0: " + n));
+			cancel();
+			return;
+		}
+		
+		boolean wasIdle;
+		lock.lock();
+		try {
+			if( cancelled || terminated ){
+				return;
+			}
+			wasIdle = demand == 0 && !emitting;
+			demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+			demanded.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		
+		if( wasIdle ){
+			onDemand();
+		}
+	}
+	
+	
+	private void cancel() {
+		lock.lock();
+		try {
+			if( cancelled || terminated ){
+				return;
+			}
+			cancelled = true;
+			demanded.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		onCancel();
+	}
+	
+	
+	private static final Subscription CANCELLED = new Subscription() {
+		@Override
+		public void request(long n) {
+		}
+		
+		@Override
+		public void cancel() {
+		}
+	};
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// SOURCE
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * The demand went from zero to positive while no item was being delivered, called on the thread
+	 * of the subscriber request. Requests made from onNext are answered by the return of next instead
+	 */
+	protected abstract void onDemand();
+	
+	
+	/**
+	 * The subscriber cancelled, stop the request in flight
+	 */
+	protected abstract void onCancel();
+	
+	
+	/**
+	 * Wait until the subscriber requests an item. Only parks on a lock condition, so a virtual
+	 * thread unmounts while waiting
+	 * @return false when cancelled or interrupted, the source must stop
+	 */
+	protected final boolean awaitDemand() {
+		lock.lock();
+		try {
+			while( demand == 0 && !cancelled && !terminated ){
+				demanded.await();
+			}
+			return !cancelled && !terminated;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	
+	/**
+	 * Deliver an item that was requested, never called concurrently
+	 * @return true if more items are requested, including from onNext, otherwise onDemand is called when they are
+	 */
+	protected final boolean next(E item) {
+		Subscriber<? super E> target;
+		lock.lock();
+		try {
+			if( cancelled || terminated || demand == 0 ){
+				return false;
+			}
+			if( demand != Long.MAX_VALUE ){
+				demand--;
+			}
+			emitting = true;
+			target = subscriber;
+		} finally {
+			lock.unlock();
+		}
+		
+		boolean more = false;
+		try {
+			target.onNext(item);
+		} finally {
+			lock.lock();
+			try {
+				emitting = false;
+				more = demand > 0 && !cancelled && !terminated;
+			} finally {
+				lock.unlock();
+			}
+		}
+		return more;
+	}
+	
+	
+	protected final void complete() {
+		Subscriber<? super E> target = terminate();
+		if( target != null ){
+			target.onComplete();
+		}
+	}
+	
+	
+	protected final void error(Throwable error) {
+		Subscriber<? super E> target = terminate();
+		if( target != null ){
+			target.onError(error);
+		}
+	}
+	
+	
+	private Subscriber<? super E> terminate() {
+		lock.lock();
+		try {
+			if( cancelled || terminated ){
+				return null;
+			}
+			terminated = true;
+			demanded.signalAll();
+			return subscriber;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	
+	public boolean isCancelled() {
+		lock.lock();
+		try {
+			return cancelled;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+}
@@ -0,0 +1,275 @@
+package com.lfyt.mobile.android.webservice;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.internal.http.HttpDate;
+
+/**
+ * Retry idempotent requests that failed to connect, timed out or were answered with 429/503.
+ *
+ * Delays grow exponentially with full jitter, Retry-After is honored when the server sends it.
+ * Retries are paid from a global budget refilled by a fraction of every request that reached the
+ * network, so under a broad failure the retries never go over that fraction of the live traffic.
+ * Responses served from the cache without network do not refill it.
+ */
+public class RetryInterceptor implements Interceptor {
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// DEFAULT
+	///////////////////////////////////////////////////////////////////////////
+	
+	public static final int DEFAULT_MAX_RETRIES = 2;
+	public static final long DEFAULT_BASE_DELAY_MS = 200;
+	public static final long DEFAULT_MAX_DELAY_MS = 5000;
+	public static final double DEFAULT_BUDGET_RATIO = 0.1;
+	
+	//Retries that can be done at once before the budget is refilled by live traffic
+	private static final long BUDGET_MIN_TOKENS = 10;
+	
+	//Budget kept in thousandths of a token
+	private static final long TOKEN = 1000;
+	
+	
+	private final int maxRetries;
+	private final long baseDelayMs;
+	private final long maxDelayMs;
+	private final long depositPerRequest;
+	private final long maxBudget;
+	
+	private final AtomicLong budget;
+	private final Random random = new Random();
+	
+	private final ConcurrentHashMap<String, AtomicLong> retriesByEndpoint = new ConcurrentHashMap<>();
+	private final AtomicLong exhaustedBudgetCount = new AtomicLong();
+	
+	
+	public RetryInterceptor() {
+		this(DEFAULT_MAX_RETRIES, DEFAULT_BASE_DELAY_MS, DEFAULT_MAX_DELAY_MS, DEFAULT_BUDGET_RATIO);
+	}
+	
+	/**
+	 * @param maxRetries retries of a single request
+	 * @param baseDelayMs delay cap of the first retry, doubled on every attempt
+	 * @param maxDelayMs max delay of a retry, Retry-After included
+	 * @param budgetRatio max retries as a fraction of the requests
+	 */
+	public RetryInterceptor(int maxRetries, long baseDelayMs, long maxDelayMs, double budgetRatio) {
+		if( maxRetries < 0 ) throw new IllegalArgumentException("maxRetries < 0: " + maxRetries);
+		if( budgetRatio < 0 ) throw new IllegalArgumentException("budgetRatio < 0: " + budgetRatio);
+		
+		this.maxRetries = maxRetries;
+		this.baseDelayMs = baseDelayMs;
+		this.maxDelayMs = maxDelayMs;
+		this.depositPerRequest = (long) (budgetRatio * TOKEN);
+		this.maxBudget = BUDGET_MIN_TOKENS * TOKEN;
+		this.budget = new AtomicLong(maxBudget);
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// INTERCEPT
+	///////////////////////////////////////////////////////////////////////////
+	
+	@Override
+	public Response intercept(Chain chain) throws IOException {
+		Request request = chain.request();
+		
+		if( !isIdempotent(request.method()) ){
+			Response response = chain.proceed(request);
+			deposit(response);
+			return response;
+		}
+		
+		for (int attempt = 0; ; attempt++) {
+			Response response;
+			try {
+				response = chain.proceed(request);
+			} catch (IOException e) {
+				boolean canceled = chain.call().isCanceled();
+				if( attempt == 0 && !canceled ){
+					deposit();
+				}
+				if( attempt >= maxRetries || canceled || !isRetryable(e) || !withdraw() ){
+					throw e;
+				}
+				onRetry(request);
+				sleep(backoffMs(attempt));
+				continue;
+			}
+			
+			if( attempt == 0 ){
+				deposit(response);
+			}
+			
+			int code = response.code();
+			if( code != 429 && code != 503 ){
+				return response;
+			}
+			
+			long delayMs = retryAfterMs(response, attempt);
+			if( attempt >= maxRetries || chain.call().isCanceled() || delayMs > maxDelayMs || !withdraw() ){
+				return response;
+			}
+			
+			response.close();
+			onRetry(request);
+			sleep(delayMs);
+		}
+	}
+	
+	
+	private static boolean isIdempotent(String method) {
+		return "GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method)
+				|| "PUT".equals(method) || "DELETE".equals(method);
+	}
+	
+	
+	private static boolean isRetryable(IOException e) {
+		return e instanceof SocketTimeoutException || e instanceof ConnectException;
+	}
+	
+	
+	private void onRetry(Request request) {
+		String endpoint = WebServiceMetrics.endpointOf(request);
+		AtomicLong retries = retriesByEndpoint.get(endpoint);
+		if( retries == null ){
+			AtomicLong created = new AtomicLong();
+			retries = retriesByEndpoint.putIfAbsent(endpoint, created);
+			if( retries == null ){
+				retries = created;
+			}
+		}
+		retries.incrementAndGet();
+	}
+	
+	
+	private static void sleep(long delayMs) throws IOException {
+		try {
+			Thread.sleep(delayMs);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting to retry");
+		}
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// DELAY
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Full jitter: random delay between 0 and base * 2^attempt, capped to the max delay
+	 */
+	long backoffMs(int attempt) {
+		long cap = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt, 30));
+		if( cap <= 0 ){
+			return 0;
+		}
+		synchronized (random) {
+			return (long) (random.nextDouble() * cap);
+		}
+	}
+	
+	
+	private long retryAfterMs(Response response, int attempt) {
+		String retryAfter = response.header("Retry-After");
+		if( retryAfter == null ){
+			return backoffMs(attempt);
+		}
+		
+		try {
+			return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+		} catch (NumberFormatException e) {
+			Date date = HttpDate.parse(retryAfter);
+			if( date == null ){
+				return backoffMs(attempt);
+			}
+			return Math.max(0, date.getTime() - System.currentTimeMillis());
+		}
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// BUDGET
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Only the requests that reached the network refill the budget, not the cache hits
+	 */
+	private void deposit(Response response) {
+		if( response.networkResponse() != null ){
+			deposit();
+		}
+	}
+	
+	
+	private void deposit() {
+		long current;
+		do {
+			current = budget.get();
+			if( current >= maxBudget ){
+				return;
+			}
+		} while( !budget.compareAndSet(current, Math.min(maxBudget, current + depositPerRequest)) );
+	}
+	
+	
+	private boolean withdraw() {
+		long current;
+		do {
+			current = budget.get();
+			if( current < TOKEN ){
+				exhaustedBudgetCount.incrementAndGet();
+				return false;
+			}
+		} while( !budget.compareAndSet(current, current - TOKEN) );
+		return true;
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// STATS
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Retries done by endpoint, keyed by "METHOD /path/{id}"
+	 */
+	public Map<String, Long> getRetriesByEndpoint() {
+		Map<String, Long> snapshot = new HashMap<>();
+		for (Map.Entry<String, AtomicLong> entry : retriesByEndpoint.entrySet()) {
+			snapshot.put(entry.getKey(), entry.getValue().get());
+		}
+		return Collections.unmodifiableMap(snapshot);
+	}
+	
+	/**
+	 * Retries refused because the budget was empty
+	 */
+	public long getExhaustedBudgetCount() {
+		return exhaustedBudgetCount.get();
+	}
+	
+}
@@ -0,0 +1,38 @@
+package com.lfyt.mobile.android.webservice;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Decode one array of the response incrementally, see {@link StreamingJsonConverterFactory}.
+ *
+ * <pre>
+ * &#64;StreamArray(path = "data.items", element = Item.class)
+ * &#64;GET("items")
+ * Call&lt;ItemsResponse&gt; items();
+ * </pre>
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface StreamArray {
+	
+	/**
+	 * Dotted path of the array from the root object, empty when the root is the array
+	 */
+	String path() default "";
+	
+	/**
+	 * Type of the array elements
+	 */
+	Class<?> element();
+	
+	/**
+	 * Elements delivered together
+	 */
+	int chunkSize() default 100;
+	
+}
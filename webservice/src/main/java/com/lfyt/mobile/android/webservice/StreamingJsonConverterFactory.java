@@ -0,0 +1,224 @@
+package com.lfyt.mobile.android.webservice;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+/**
+ * Converter of the service methods annotated with {@link StreamArray}, other methods fall through
+ * to the next converter factory.
+ *
+ * The array at the configured path is decoded one element at a time with Gson's JsonReader while
+ * the body is read, and handed in chunks to the listener registered for the request. Only the
+ * chunk being filled is held in memory. The rest of the document is decoded as usual into the
+ * response type, with the streamed array left empty. Without a listener the array is decoded
+ * in full like any other, so a plain call of the same method still gets every element.
+ *
+ * The converter runs on the thread that read the response, it finds the listener of the request
+ * through the interceptor returned by {@link #newInterceptor()}, that must be added to the client.
+ * The listener is kept in the tag of requests created by a model, so it is still found when an
+ * interceptor rebuilds the request.
+ */
+public class StreamingJsonConverterFactory extends Converter.Factory {
+	
+	
+	/**
+	 * Receives the decoded elements of a streamed array, called on the network thread
+	 */
+	public interface ChunkListener {
+		
+		void onChunk(List<?> items);
+	}
+	
+	
+	//Listener of the request read by the current thread, set by the interceptor
+	private static final ThreadLocal<ChunkListener> CURRENT_LISTENER = new ThreadLocal<>();
+	
+	
+	private final Gson gson;
+	
+	//Listeners of requests without RequestTag, only found while the request is not rebuilt
+	private final ConcurrentHashMap<Request, ChunkListener> listeners = new ConcurrentHashMap<>();
+	
+	
+	public StreamingJsonConverterFactory(Gson gson) {
+		this.gson = gson;
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// LISTENERS
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Deliver the streamed elements of the request to the listener until unregistered
+	 */
+	public void register(Request request, ChunkListener listener) {
+		RequestTag tag = RequestTag.of(request);
+		if( tag != null ){
+			tag.chunkListener = listener;
+		}
+		else{
+			listeners.put(request, listener);
+		}
+	}
+	
+	
+	public void unregister(Request request) {
+		RequestTag tag = RequestTag.of(request);
+		if( tag != null ){
+			tag.chunkListener = null;
+		}
+		else{
+			listeners.remove(request);
+		}
+	}
+	
+	
+	public boolean isRegistered(Request request) {
+		return listenerOf(request) != null;
+	}
+	
+	
+	private ChunkListener listenerOf(Request request) {
+		RequestTag tag = RequestTag.of(request);
+		return tag != null ? tag.chunkListener : listeners.get(request);
+	}
+	
+	
+	/**
+	 * Interceptor exposing the listener of the request to the converter
+	 */
+	public Interceptor newInterceptor() {
+		return new Interceptor() {
+			@Override
+			public Response intercept(Chain chain) throws IOException {
+				//Always overwritten, pool threads must not keep the listener of a previous call
+				CURRENT_LISTENER.set(listenerOf(chain.request()));
+				return chain.proceed(chain.request());
+			}
+		};
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// CONVERTER
+	///////////////////////////////////////////////////////////////////////////
+	
+	@Override
+	public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+		for (Annotation annotation : annotations) {
+			if( annotation instanceof StreamArray ){
+				return new StreamingConverter<>((StreamArray) annotation, gson.getAdapter(TypeToken.get(type)));
+			}
+		}
+		return null;
+	}
+	
+	
+	private final class StreamingConverter<T> implements Converter<ResponseBody, T> {
+		
+		private final String[] path;
+		private final int chunkSize;
+		private final TypeAdapter<?> elementAdapter;
+		private final TypeAdapter<T> adapter;
+		private final TypeAdapter<JsonElement> treeAdapter;
+		
+		
+		StreamingConverter(StreamArray streamArray, TypeAdapter<T> adapter) {
+			this.path = streamArray.path().isEmpty() ? new String[0] : streamArray.path().split("\\.");
+			this.chunkSize = Math.max(1, streamArray.chunkSize());
+			this.elementAdapter = gson.getAdapter(streamArray.element());
+			this.adapter = adapter;
+			this.treeAdapter = gson.getAdapter(JsonElement.class);
+		}
+		
+		
+		@Override
+		public T convert(ResponseBody value) throws IOException {
+			ChunkListener listener = CURRENT_LISTENER.get();
+			CURRENT_LISTENER.remove();
+			
+			JsonReader reader = gson.newJsonReader(value.charStream());
+			try {
+				JsonElement rest = read(reader, 0, listener);
+				if( reader.peek() != JsonToken.END_DOCUMENT ){
+					throw new IOException("JSON document was not fully consumed.");
+				}
+				return adapter.fromJsonTree(rest);
+			} finally {
+				value.close();
+			}
+		}
+		
+		
+		/**
+		 * Tree of the value under the reader, streaming the array when the path is matched
+		 */
+		private JsonElement read(JsonReader reader, int depth, ChunkListener listener) throws IOException {
+			JsonToken token = reader.peek();
+			
+			//Nobody to hand the elements to, decoded with the rest of the document
+			if( depth == path.length && token == JsonToken.BEGIN_ARRAY && listener != null ){
+				stream(reader, listener);
+				return new JsonArray();
+			}
+			
+			if( depth == path.length || token != JsonToken.BEGIN_OBJECT ){
+				return treeAdapter.read(reader);
+			}
+			
+			JsonObject object = new JsonObject();
+			reader.beginObject();
+			while( reader.hasNext() ){
+				String name = reader.nextName();
+				object.add(name, name.equals(path[depth]) ? read(reader, depth + 1, listener) : treeAdapter.read(reader));
+			}
+			reader.endObject();
+			return object;
+		}
+		
+		
+		private void stream(JsonReader reader, ChunkListener listener) throws IOException {
+			List<Object> chunk = new ArrayList<>(chunkSize);
+			
+			reader.beginArray();
+			while( reader.hasNext() ){
+				chunk.add(elementAdapter.read(reader));
+				if( chunk.size() == chunkSize ){
+					listener.onChunk(chunk);
+					chunk = new ArrayList<>(chunkSize);
+				}
+			}
+			reader.endArray();
+			
+			if( !chunk.isEmpty() ){
+				listener.onChunk(chunk);
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,66 @@
+package com.lfyt.mobile.android.webservice;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Type adapters installed in the Gson of the WebServiceConfiguration.
+ *
+ * Response types registered here are decoded by their own adapter instead of Gson's reflective one,
+ * usually a {@link BindingTypeAdapter} or a generated adapter, so their first decode doesn't pay
+ * for reflection and adapter construction.
+ */
+public class TypeAdapterRegistry {
+	
+	
+	private final Map<Type, TypeAdapter<?>> adapters = new LinkedHashMap<>();
+	private final List<TypeAdapterFactory> factories = new ArrayList<>();
+	
+	
+	public <T> TypeAdapterRegistry register(Class<T> type, TypeAdapter<T> adapter) {
+		return register((Type) type, adapter);
+	}
+	
+	
+	/**
+	 * Adapter of a parameterized type, like the one of a TypeToken
+	 */
+	public synchronized TypeAdapterRegistry register(Type type, TypeAdapter<?> adapter) {
+		adapters.put(type, adapter.nullSafe());
+		return this;
+	}
+	
+	
+	/**
+	 * Factory of generated adapters, asked before Gson's reflective factory
+	 */
+	public synchronized TypeAdapterRegistry register(TypeAdapterFactory factory) {
+		factories.add(factory);
+		return this;
+	}
+	
+	
+	public synchronized Set<Type> getRegisteredTypes() {
+		return Collections.unmodifiableSet(adapters.keySet());
+	}
+	
+	
+	synchronized void applyTo(GsonBuilder builder) {
+		for (Map.Entry<Type, TypeAdapter<?>> entry : adapters.entrySet()) {
+			builder.registerTypeAdapter(entry.getKey(), entry.getValue());
+		}
+		for (TypeAdapterFactory factory : factories) {
+			builder.registerTypeAdapterFactory(factory);
+		}
+	}
+	
+}
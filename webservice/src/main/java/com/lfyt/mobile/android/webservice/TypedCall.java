@@ -0,0 +1,127 @@
+package com.lfyt.mobile.android.webservice;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import okhttp3.Request;
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+
+/**
+ * Call of a service method that knows the type its body is decoded to, so responses shared
+ * between calls are only shared between calls decoding the same type
+ */
+final class TypedCall<T> implements Call<T> {
+	
+	static final CallAdapter.Factory FACTORY = new Factory();
+	
+	
+	private final Call<T> delegate;
+	private final Type responseType;
+	
+	TypedCall(Call<T> delegate, Type responseType) {
+		this.delegate = delegate;
+		this.responseType = responseType;
+	}
+	
+	
+	/**
+	 * Type the body of the call is decoded to, null when the call was not created by a service of a model
+	 */
+	static Type responseTypeOf(Call<?> call) {
+		return call instanceof TypedCall ? ((TypedCall<?>) call).responseType : null;
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// CALL
+	///////////////////////////////////////////////////////////////////////////
+	
+	@Override
+	public Response<T> execute() throws IOException {
+		return delegate.execute();
+	}
+	
+	
+	/**
+	 * Callbacks receive this call, not the delegate, so it can be used as a key by the caller
+	 */
+	@Override
+	public void enqueue(final Callback<T> callback) {
+		delegate.enqueue(new Callback<T>() {
+			@Override
+			public void onResponse(Call<T> call, Response<T> response) {
+				callback.onResponse(TypedCall.this, response);
+			}
+			
+			@Override
+			public void onFailure(Call<T> call, Throwable error) {
+				callback.onFailure(TypedCall.this, error);
+			}
+		});
+	}
+	
+	@Override
+	public boolean isExecuted() {
+		return delegate.isExecuted();
+	}
+	
+	@Override
+	public void cancel() {
+		delegate.cancel();
+	}
+	
+	@Override
+	public boolean isCanceled() {
+		return delegate.isCanceled();
+	}
+	
+	@Override
+	public Call<T> clone() {
+		return new TypedCall<>(delegate.clone(), responseType);
+	}
+	
+	@Override
+	public Request request() {
+		return delegate.request();
+	}
+	
+	
+	
+	
+	/**
+	 * Wraps the calls adapted by the next factory, usually Retrofit's default one
+	 */
+	private static final class Factory extends CallAdapter.Factory {
+		
+		@Override
+		public CallAdapter<?, ?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+			if( getRawType(returnType) != Call.class ){
+				return null;
+			}
+			
+			@SuppressWarnings("unchecked")
+			final CallAdapter<Object, Call<Object>> delegate =
+					(CallAdapter<Object, Call<Object>>) retrofit.nextCallAdapter(this, returnType, annotations);
+			
+			return new CallAdapter<Object, Call<Object>>() {
+				@Override
+				public Type responseType() {
+					return delegate.responseType();
+				}
+				
+				@Override
+				public Call<Object> adapt(Call<Object> call) {
+					return new TypedCall<>(delegate.adapt(call), delegate.responseType());
+				}
+			};
+		}
+	}
+	
+}
@@ -0,0 +1,250 @@
+package com.lfyt.mobile.android.webservice;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Cache;
+import okhttp3.CacheControl;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSource;
+
+/**
+ * Size bounded disk cache for the web service.
+ *
+ * Responses with ETag/Last-Modified are revalidated with If-None-Match/If-Modified-Since by OkHttp,
+ * a 304 reuses the cached body without transferring it again. Endpoints registered with
+ * {@link #staleWhileRevalidate(String, long)} are answered from the cache even when stale and
+ * refreshed in background.
+ */
+public class WebServiceCache {
+	
+	
+	private final Cache cache;
+	
+	private final List<StalePolicy> stalePolicies = new CopyOnWriteArrayList<>();
+	private final ConcurrentHashMap<String, Boolean> revalidating = new ConcurrentHashMap<>();
+	
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong staleHitCount = new AtomicLong();
+	private final AtomicLong revalidatedCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	
+	
+	public WebServiceCache(File directory, long maxSize) {
+		this.cache = new Cache(directory, maxSize);
+	}
+	
+	
+	public Cache getCache() {
+		return cache;
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// STALE WHILE REVALIDATE
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * GET requests whose path starts with the prefix are answered from the cache while the
+	 * cached response is at most maxStaleSeconds stale, and revalidated in background
+	 */
+	public WebServiceCache staleWhileRevalidate(String pathPrefix, long maxStaleSeconds) {
+		stalePolicies.add(new StalePolicy(pathPrefix, maxStaleSeconds));
+		return this;
+	}
+	
+	
+	private StalePolicy stalePolicyOf(Request request) {
+		if( !"GET".equals(request.method()) ){
+			return null;
+		}
+		
+		String path = request.url().encodedPath();
+		for (StalePolicy policy : stalePolicies) {
+			if( path.startsWith(policy.pathPrefix) ){
+				return policy;
+			}
+		}
+		return null;
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// INTERCEPTOR
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Application interceptor counting the cache outcomes and serving stale responses,
+	 * revalidation requests are executed with the given client that must use this same cache.
+	 *
+	 * It must be the last application interceptor: the cache probe of the stale endpoints then goes
+	 * straight to the OkHttp cache, and the interceptors above only see the response of the call
+	 */
+	public Interceptor newInterceptor(final Call.Factory revalidationClient) {
+		return new Interceptor() {
+			@Override
+			public Response intercept(Chain chain) throws IOException {
+				Request request = chain.request();
+				
+				StalePolicy policy = stalePolicyOf(request);
+				if( policy != null ){
+					Response cached = chain.proceed(request.newBuilder()
+							.cacheControl(new CacheControl.Builder()
+									.onlyIfCached()
+									.maxStale((int) policy.maxStaleSeconds, TimeUnit.SECONDS)
+									.build())
+							.build());
+					
+					//504 means nothing usable in the cache
+					if( cached.code() != 504 ){
+						hitCount.incrementAndGet();
+						if( isStale(cached) ){
+							staleHitCount.incrementAndGet();
+							revalidate(revalidationClient, request);
+						}
+						return cached;
+					}
+					cached.close();
+				}
+				
+				return count(chain.proceed(request));
+			}
+		};
+	}
+	
+	
+	private Response count(Response response) {
+		Response networkResponse = response.networkResponse();
+		if( networkResponse == null ){
+			if( response.cacheResponse() != null ){
+				hitCount.incrementAndGet();
+			}
+		}
+		else if( networkResponse.code() == 304 && response.cacheResponse() != null ){
+			//Conditional request answered with 304
+			revalidatedCount.incrementAndGet();
+		}
+		else{
+			missCount.incrementAndGet();
+		}
+		return response;
+	}
+	
+	
+	private static boolean isStale(Response response) {
+		List<String> warnings = response.headers("Warning");
+		for (int i = 0, count = warnings.size(); i < count; i++) {
+			if( warnings.get(i).startsWith("110") ){
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	
+	private void revalidate(Call.Factory revalidationClient, Request request) {
+		final String url = request.url().toString();
+		if( revalidating.putIfAbsent(url, Boolean.TRUE) != null ){
+			return;
+		}
+		
+		//max-age=0 forces a conditional request that refreshes the cached entry
+		Request revalidation = request.newBuilder()
+				.cacheControl(new CacheControl.Builder().maxAge(0, TimeUnit.SECONDS).build())
+				.build();
+		
+		revalidationClient.newCall(revalidation).enqueue(new Callback() {
+			@Override
+			public void onFailure(Call call, IOException e) {
+				revalidating.remove(url);
+			}
+			
+			@Override
+			public void onResponse(Call call, Response response) throws IOException {
+				try {
+					count(response);
+					
+					//Read the body so OkHttp writes it to the cache
+					BufferedSource source = response.body().source();
+					Buffer buffer = new Buffer();
+					while( source.read(buffer, 8192) != -1 ){
+						buffer.clear();
+					}
+				} finally {
+					response.close();
+					revalidating.remove(url);
+				}
+			}
+		});
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// STATS
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Responses served from the cache without network, stale ones included
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+	
+	/**
+	 * Stale responses served while revalidated in background
+	 */
+	public long getStaleHitCount() {
+		return staleHitCount.get();
+	}
+	
+	/**
+	 * Conditional requests answered with 304, the body came from the cache
+	 */
+	public long getRevalidatedCount() {
+		return revalidatedCount.get();
+	}
+	
+	/**
+	 * Responses transferred from the network
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+	
+	@Override
+	public String toString() {
+		return "hits=" + hitCount + " staleHits=" + staleHitCount + " revalidated=" + revalidatedCount
+				+ " misses=" + missCount;
+	}
+	
+	
+	
+	
+	private static final class StalePolicy {
+		
+		final String pathPrefix;
+		final long maxStaleSeconds;
+		
+		StalePolicy(String pathPrefix, long maxStaleSeconds) {
+			this.pathPrefix = pathPrefix;
+			this.maxStaleSeconds = maxStaleSeconds;
+		}
+	}
+	
+}
@@ -1,5 +1,10 @@
 package com.lfyt.mobile.android.webservice;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import okhttp3.OkHttpClient;
+
 public class WebServiceComponent {
 	
 	
@@ -14,10 +19,65 @@ public class WebServiceComponent {
 	public String getBaseUrl() {
 		return baseUrl;
 	}
-
+	
 	public WebServiceConfiguration getWebServiceConfiguration() {
 		return webServiceConfiguration;
 	}
 	
 	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// SHARED CLIENT
+	///////////////////////////////////////////////////////////////////////////
+	
+	private OkHttpClient okHttpClient;
+	
+	private final Map<String, SharedWebService> sharedWebServices = new HashMap<>();
+	
+	
+	/**
+	 * Base client of this component, every model derives its own client from it with newBuilder()
+	 * so all of them share the same connection pool, dispatcher and TLS sessions
+	 */
+	public synchronized OkHttpClient getOkHttpClient() {
+		if( okHttpClient == null ){
+			okHttpClient = webServiceConfiguration.newOkHttpClientBuilder().build();
+		}
+		return okHttpClient;
+	}
+	
+	
+	synchronized SharedWebService getSharedWebService(String key) {
+		return sharedWebServices.get(key);
+	}
+	
+	synchronized void putSharedWebService(String key, SharedWebService sharedWebService) {
+		sharedWebServices.put(key, sharedWebService);
+	}
+	
+	
+	/**
+	 * Drop every cached service proxy, next setupWebService calls will build them again
+	 */
+	public synchronized void clearSharedWebServices() {
+		sharedWebServices.clear();
+	}
+	
+	
+	
+	
+	/**
+	 * Service proxy shared by every model with the same web service key. The http log of each call
+	 * goes to the model that executed it, found from the tag of the request
+	 */
+	static class SharedWebService {
+	
+		final Object service;
+	
+		SharedWebService(Object service) {
+			this.service = service;
+		}
+	}
+	
 }
@@ -1,11 +1,20 @@
 package com.lfyt.mobile.android.webservice;
 
+import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
 
+import java.io.File;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import okhttp3.ConnectionPool;
 import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
 import retrofit2.converter.gson.GsonConverterFactory;
 
 public class WebServiceConfiguration {
@@ -32,6 +41,105 @@ public class WebServiceConfiguration {
 		return MAX_REQUEST_PER_HOST;
 	}
 	
+	/**
+	 * Directory of the http disk cache, usually context.getCacheDir() + "/http".
+	 * No cache is used when null.
+	 */
+	protected File provideCacheDirectory(){
+		return null;
+	}
+	
+	protected long provideCacheMaxSize(){
+		return DEFAULT_CACHE_MAX_SIZE;
+	}
+	
+	/**
+	 * Memory used by decoded responses kept in the ResponseCache
+	 */
+	protected long provideResponseCacheMaxBytes(){
+		return ResponseCache.DEFAULT_MAX_BYTES;
+	}
+	
+	/**
+	 * Retry layer for idempotent requests, no retry is done when null
+	 */
+	protected RetryInterceptor provideRetryInterceptor(){
+		return null;
+	}
+	
+	/**
+	 * Gzip of large request bodies, configured by host or endpoint. Bodies are never compressed when null
+	 */
+	protected RequestCompressionInterceptor provideRequestCompressionInterceptor(){
+		return null;
+	}
+	
+	/**
+	 * Per host circuit breaker, requests are never failed fast when null. Give it a
+	 * CircuitBreaker.Connectivity so a host refusing connections is told apart from a device offline
+	 */
+	protected CircuitBreaker provideCircuitBreaker(){
+		return null;
+	}
+	
+	/**
+	 * Adaptive per host concurrency limit applied before the requests reach the dispatcher.
+	 * Every request is sent to the dispatcher right away when null
+	 */
+	protected ConcurrencyLimiter provideConcurrencyLimiter(){
+		return null;
+	}
+	
+	/**
+	 * Per host timing of the DNS, connect, TLS, write, first byte and read phases of the calls,
+	 * and connection reuse. The calls have no event listener when null
+	 */
+	protected ConnectionPhaseMetrics provideConnectionPhaseMetrics(){
+		return null;
+	}
+	
+	/**
+	 * Adapters of the response types, installed in the Gson used by every converter
+	 */
+	protected TypeAdapterRegistry provideTypeAdapterRegistry(){
+		return new TypeAdapterRegistry();
+	}
+	
+	/**
+	 * Types whose adapters are built in background at startup, usually the responses of the first screen
+	 */
+	protected List<Type> provideWarmUpTypes(){
+		return Collections.emptyList();
+	}
+	
+	/**
+	 * Compact formats negotiated before JSON, register the endpoints that use them with
+	 * getWireFormatConverterFactory().negotiate(pathPrefix). No negotiation is done when empty
+	 */
+	protected List<WireFormat> provideWireFormats(){
+		return Collections.emptyList();
+	}
+	
+	/**
+	 * Executor of onResponse/onFailure, a background pool moves the classification and onSuccess off the
+	 * main thread and the model and WebServiceStateAPI events are switched to the main thread when posted.
+	 * Retrofit's default, the main thread on Android, is used when null
+	 */
+	protected Executor provideCallbackExecutor(){
+		return null;
+	}
+	
+	/**
+	 * Executor the model events are posted on when a callback executor is provided
+	 */
+	protected Executor provideMainThreadExecutor(){
+		return new MainThreadExecutor();
+	}
+	
+	protected int provideAsyncLogCapacity(){
+		return AsyncLogSink.DEFAULT_CAPACITY;
+	}
+	
 	
 	
 	
@@ -43,8 +151,36 @@ public class WebServiceConfiguration {
 	
 	private Dispatcher dispatcher;
 	
+	private Gson gson;
+	
 	private GsonConverterFactory gsonConverterFactory;
 	
+	private StreamingJsonConverterFactory streamingConverterFactory;
+	
+	private WireFormatConverterFactory wireFormatConverterFactory;
+	
+	private AsyncLogSink asyncLogSink;
+	
+	private WebServiceCache webServiceCache;
+	
+	private ResponseCache responseCache;
+	
+	private final RequestCoalescer requestCoalescer = new RequestCoalescer();
+	
+	private RetryInterceptor retryInterceptor;
+	
+	private RequestCompressionInterceptor requestCompressionInterceptor;
+	
+	private CircuitBreaker circuitBreaker;
+	
+	private ConcurrencyLimiter concurrencyLimiter;
+	
+	private ConnectionPhaseMetrics connectionPhaseMetrics;
+	
+	private Executor callbackExecutor;
+	
+	private Executor mainThreadExecutor;
+	
 	
 	
 	
@@ -62,10 +198,78 @@ public class WebServiceConfiguration {
 	}
 	
 	
+	public Gson getGson() {
+		return gson;
+	}
+	
 	public GsonConverterFactory getGsonConverterFactory() {
 		return gsonConverterFactory;
 	}
 	
+	public StreamingJsonConverterFactory getStreamingConverterFactory() {
+		return streamingConverterFactory;
+	}
+	
+	public WireFormatConverterFactory getWireFormatConverterFactory() {
+		return wireFormatConverterFactory;
+	}
+	
+	public WebServiceCache getWebServiceCache() {
+		return webServiceCache;
+	}
+	
+	public ResponseCache getResponseCache() {
+		return responseCache;
+	}
+	
+	public RequestCoalescer getRequestCoalescer() {
+		return requestCoalescer;
+	}
+	
+	public RetryInterceptor getRetryInterceptor() {
+		return retryInterceptor;
+	}
+	
+	public RequestCompressionInterceptor getRequestCompressionInterceptor() {
+		return requestCompressionInterceptor;
+	}
+	
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+	
+	public ConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
+	}
+	
+	public ConnectionPhaseMetrics getConnectionPhaseMetrics() {
+		return connectionPhaseMetrics;
+	}
+	
+	public Executor getCallbackExecutor() {
+		return callbackExecutor;
+	}
+	
+	/**
+	 * Created when first used, so no Handler is needed while callbacks run on the main thread
+	 */
+	public synchronized Executor getMainThreadExecutor() {
+		if( mainThreadExecutor == null ){
+			mainThreadExecutor = provideMainThreadExecutor();
+		}
+		return mainThreadExecutor;
+	}
+	
+	/**
+	 * Sink shared by every async http logger, its thread is only started when first used
+	 */
+	public synchronized AsyncLogSink getAsyncLogSink() {
+		if( asyncLogSink == null ){
+			asyncLogSink = new AsyncLogSink(provideAsyncLogCapacity(), AsyncLogSink.DEFAULT_BATCH_SIZE, AsyncLogSink.DEFAULT_FLUSH_INTERVAL_MS);
+		}
+		return asyncLogSink;
+	}
+	
 	public void setConnectionPool(ConnectionPool connectionPool) {
 		this.connectionPool = connectionPool;
 	}
@@ -78,6 +282,124 @@ public class WebServiceConfiguration {
 		this.gsonConverterFactory = gsonConverterFactory;
 	}
 	
+	public void setStreamingConverterFactory(StreamingJsonConverterFactory streamingConverterFactory) {
+		this.streamingConverterFactory = streamingConverterFactory;
+	}
+	
+	public void setWireFormatConverterFactory(WireFormatConverterFactory wireFormatConverterFactory) {
+		this.wireFormatConverterFactory = wireFormatConverterFactory;
+	}
+	
+	public void setWebServiceCache(WebServiceCache webServiceCache) {
+		this.webServiceCache = webServiceCache;
+	}
+	
+	public void setResponseCache(ResponseCache responseCache) {
+		this.responseCache = responseCache;
+	}
+	
+	public void setRetryInterceptor(RetryInterceptor retryInterceptor) {
+		this.retryInterceptor = retryInterceptor;
+	}
+	
+	public void setRequestCompressionInterceptor(RequestCompressionInterceptor requestCompressionInterceptor) {
+		this.requestCompressionInterceptor = requestCompressionInterceptor;
+	}
+	
+	public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+	
+	public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+		this.concurrencyLimiter = concurrencyLimiter;
+	}
+	
+	public void setConnectionPhaseMetrics(ConnectionPhaseMetrics connectionPhaseMetrics) {
+		this.connectionPhaseMetrics = connectionPhaseMetrics;
+	}
+	
+	public void setCallbackExecutor(Executor callbackExecutor) {
+		this.callbackExecutor = callbackExecutor;
+	}
+	
+	public synchronized void setMainThreadExecutor(Executor mainThreadExecutor) {
+		this.mainThreadExecutor = mainThreadExecutor;
+	}
+	
+	public synchronized void setAsyncLogSink(AsyncLogSink asyncLogSink) {
+		this.asyncLogSink = asyncLogSink;
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// CLIENT
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Builder of the base client shared by every model of a WebServiceComponent
+	 */
+	public OkHttpClient.Builder newOkHttpClientBuilder() {
+		OkHttpClient.Builder builder = new OkHttpClient.Builder()
+				
+				//Common Connection Objects
+				.dispatcher(dispatcher)
+				.connectionPool(connectionPool)
+				
+				//Never Retry On Connection Failure, retries are done by the RetryInterceptor
+				.retryOnConnectionFailure(false);
+		
+		
+		//Retry, outermost so every attempt goes through the rest of the chain
+		if( retryInterceptor != null ){
+			builder.addInterceptor(retryInterceptor);
+		}
+		
+		
+		//Request compression, before the model interceptors so the logs show both sizes
+		if( requestCompressionInterceptor != null ){
+			builder.addInterceptor(requestCompressionInterceptor);
+		}
+		
+		
+		//Disk Cache, its interceptor is added by each model as its last application interceptor
+		if( webServiceCache != null ){
+			builder.cache(webServiceCache.getCache());
+		}
+		
+		return builder;
+	}
+	
+	///////////////////////////////////////////////////////////////////////////
+	// WARM UP
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Build the adapters of the types and decode an empty object with each of them in background,
+	 * so the first response of each type is not slowed down by adapter construction
+	 */
+	public Thread warmUp(final List<? extends Type> types) {
+		final Gson gson = this.gson;
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (Type type : types) {
+					try {
+						gson.getAdapter(TypeToken.get(type)).fromJson("{}");
+					} catch (Exception ignored) {
+						//Adapter is cached even when the type is not an object
+					}
+				}
+			}
+		}, "WebService-WarmUp");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+		return thread;
+	}
+	
+	
 	///////////////////////////////////////////////////////////////////////////
 	// DEFAULT
 	///////////////////////////////////////////////////////////////////////////
@@ -85,13 +407,30 @@ public class WebServiceConfiguration {
 	private static final int DEFAULT_TOTAL_CONNECTIONS = 10;
 	private static final long DEFAULT_CONNECTION_DURATION_SECONDS = 120;
 	private static final int MAX_REQUEST_PER_HOST = 10000;
+	private static final long DEFAULT_CACHE_MAX_SIZE = 10 * 1024 * 1024;
 	
 	
 	
 	private void setupDefaultComponents() {
 		connectionPool = provideDefaultConnectionPool();
 		dispatcher = provideDefaultDispatcher();
-		gsonConverterFactory = provideDefaultGsonConverterFactory();
+		gson = provideDefaultGson();
+		gsonConverterFactory = GsonConverterFactory.create(gson);
+		streamingConverterFactory = new StreamingJsonConverterFactory(gson);
+		wireFormatConverterFactory = provideDefaultWireFormatConverterFactory();
+		webServiceCache = provideDefaultWebServiceCache();
+		responseCache = new ResponseCache(provideResponseCacheMaxBytes());
+		retryInterceptor = provideRetryInterceptor();
+		requestCompressionInterceptor = provideRequestCompressionInterceptor();
+		circuitBreaker = provideCircuitBreaker();
+		concurrencyLimiter = provideConcurrencyLimiter();
+		connectionPhaseMetrics = provideConnectionPhaseMetrics();
+		callbackExecutor = provideCallbackExecutor();
+		
+		List<Type> warmUpTypes = provideWarmUpTypes();
+		if( !warmUpTypes.isEmpty() ){
+			warmUp(warmUpTypes);
+		}
 	}
 	
 	
@@ -108,12 +447,25 @@ public class WebServiceConfiguration {
 	}
 	
 	
-	private GsonConverterFactory provideDefaultGsonConverterFactory(){
-		return GsonConverterFactory.create(
-				new GsonBuilder()
-						.setDateFormat("dd-MM-yyyy")
-						.create()
-		);
+	private WebServiceCache provideDefaultWebServiceCache(){
+		File directory = provideCacheDirectory();
+		return directory == null ? null : new WebServiceCache(directory, provideCacheMaxSize());
+	}
+	
+	
+	private WireFormatConverterFactory provideDefaultWireFormatConverterFactory(){
+		List<WireFormat> wireFormats = provideWireFormats();
+		return wireFormats.isEmpty() ? null : new WireFormatConverterFactory(gson, wireFormats);
+	}
+	
+	
+	private Gson provideDefaultGson(){
+		GsonBuilder builder = new GsonBuilder()
+				.setDateFormat(DateTypeAdapter.PATTERN)
+				.registerTypeAdapter(Date.class, new DateTypeAdapter());
+		
+		provideTypeAdapterRegistry().applyTo(builder);
+		return builder.create();
 	}
 	
 }
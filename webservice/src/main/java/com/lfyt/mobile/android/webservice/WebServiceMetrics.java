@@ -0,0 +1,161 @@
+package com.lfyt.mobile.android.webservice;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+
+import okhttp3.Request;
+
+/**
+ * Per endpoint latency histograms and outcome counters.
+ *
+ * Endpoints are identified by method and path, with identifier-like segments
+ * (numbers, uuids, long hex strings) replaced by {id} to approximate the path template.
+ */
+public class WebServiceMetrics {
+	
+	
+	public enum Outcome {
+		SUCCESS,
+		CLIENT_ERROR,
+		SERVER_ERROR,
+		TIMEOUT,
+		NO_INTERNET,
+		JSON_ERROR,
+		OTHER
+	}
+	
+	
+	private final ConcurrentHashMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// RECORD
+	///////////////////////////////////////////////////////////////////////////
+	
+	public void record(String endpoint, long durationNanos, Outcome outcome) {
+		Endpoint metrics = endpoints.get(endpoint);
+		if( metrics == null ){
+			Endpoint created = new Endpoint();
+			metrics = endpoints.putIfAbsent(endpoint, created);
+			if( metrics == null ){
+				metrics = created;
+			}
+		}
+		metrics.record(durationNanos, outcome);
+	}
+	
+	
+	public void reset() {
+		endpoints.clear();
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// SNAPSHOT
+	///////////////////////////////////////////////////////////////////////////
+	
+	public Map<String, EndpointSnapshot> snapshot() {
+		Map<String, EndpointSnapshot> snapshot = new HashMap<>();
+		for (Map.Entry<String, Endpoint> entry : endpoints.entrySet()) {
+			snapshot.put(entry.getKey(), entry.getValue().snapshot());
+		}
+		return Collections.unmodifiableMap(snapshot);
+	}
+	
+	
+	public EndpointSnapshot snapshot(String endpoint) {
+		Endpoint metrics = endpoints.get(endpoint);
+		return metrics == null ? null : metrics.snapshot();
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// ENDPOINT
+	///////////////////////////////////////////////////////////////////////////
+	
+	private static final Pattern ID_SEGMENT = Pattern.compile(
+			"\\d+|[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}|[0-9a-fA-F]{16,}");
+	
+	
+	/**
+	 * Method and path template of the request, like "GET /users/{id}/posts"
+	 */
+	public static String endpointOf(Request request) {
+		StringBuilder endpoint = new StringBuilder(request.method()).append(' ');
+		
+		List<String> segments = request.url().pathSegments();
+		for (int i = 0, count = segments.size(); i < count; i++) {
+			String segment = segments.get(i);
+			endpoint.append('/').append(ID_SEGMENT.matcher(segment).matches() ? "{id}" : segment);
+		}
+		return endpoint.toString();
+	}
+	
+	
+	private static class Endpoint {
+		
+		final LatencyHistogram latency = new LatencyHistogram();
+		final AtomicLongArray outcomes = new AtomicLongArray(Outcome.values().length);
+		
+		void record(long durationNanos, Outcome outcome) {
+			latency.recordNanos(durationNanos);
+			outcomes.incrementAndGet(outcome.ordinal());
+		}
+		
+		EndpointSnapshot snapshot() {
+			Outcome[] values = Outcome.values();
+			long[] counts = new long[values.length];
+			for (int i = 0; i < values.length; i++) {
+				counts[i] = outcomes.get(i);
+			}
+			return new EndpointSnapshot(latency.snapshot(), counts);
+		}
+	}
+	
+	
+	public static class EndpointSnapshot {
+		
+		private final LatencyHistogram.Snapshot latency;
+		private final long[] outcomes;
+		
+		EndpointSnapshot(LatencyHistogram.Snapshot latency, long[] outcomes) {
+			this.latency = latency;
+			this.outcomes = outcomes;
+		}
+		
+		/**
+		 * Latency values in microseconds
+		 */
+		public LatencyHistogram.Snapshot getLatency() {
+			return latency;
+		}
+		
+		public long getCount(Outcome outcome) {
+			return outcomes[outcome.ordinal()];
+		}
+		
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder(latency.toString());
+			Outcome[] values = Outcome.values();
+			for (int i = 0; i < values.length; i++) {
+				if( outcomes[i] != 0 ){
+					builder.append(' ').append(values[i]).append('=').append(outcomes[i]);
+				}
+			}
+			return builder.toString();
+		}
+	}
+	
+}
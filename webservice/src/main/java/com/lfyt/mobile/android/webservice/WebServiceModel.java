@@ -1,5 +1,6 @@
 package com.lfyt.mobile.android.webservice;
 
+import android.os.Looper;
 import android.support.annotation.CallSuper;
 
 import com.google.gson.JsonSyntaxException;
@@ -8,13 +9,24 @@ import com.lfyt.mobile.android.livemodel.Event;
 import com.lfyt.mobile.android.livemodel.LiveModel;
 import com.lfyt.mobile.android.log.Logger;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Type;
 import java.net.ConnectException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
-import java.util.Date;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import okhttp3.OkHttpClient;
+import okhttp3.Request;
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
@@ -38,6 +50,8 @@ public abstract class WebServiceModel<T extends WebServiceResponse> extends Live
 	// Constructor
 	///////////////////////////////////////////////////////////////////////////
 	WebServiceStateAPI mWebServiceStateAPI;
+	private WebServiceComponent webServiceComponent;
+	private HttpLogInterceptor.Logger httpLogger = this;
 
 	public WebServiceModel(WebServiceStateAPI mWebServiceStateAPI){
 		this.mWebServiceStateAPI = mWebServiceStateAPI;
@@ -51,6 +65,23 @@ public abstract class WebServiceModel<T extends WebServiceResponse> extends Live
 	
 	protected boolean handleResponse = true;
 	protected HttpLogInterceptor.Level logLevel = HttpLogInterceptor.Level.BODY_ONLY;
+	protected long logMaxBodyBytes = HttpLogInterceptor.DEFAULT_MAX_BODY_BYTES;
+	protected HttpLogInterceptor.Condition logCondition = HttpLogInterceptor.Condition.ALWAYS;
+	protected int logSampleRate = 1;
+	protected long logSlowThresholdMs = 1000;
+	//Write the http log from the AsyncLogSink thread instead of the OkHttp threads
+	protected boolean asyncLog = false;
+	//Append the connection phases to the response log line, needs the ConnectionPhaseMetrics of the configuration
+	protected boolean logConnectionPhases = false;
+	
+	//Time decoded responses are reused from the ResponseCache, disabled when 0
+	protected long responseCacheTtlMs = 0;
+	protected List<String> responseCacheHeaders = Arrays.asList("Accept", "Accept-Language", "Authorization", "Cookie");
+	//Set by an interceptor or the cookie jar, these make the response depend on state the key does not see
+	protected List<String> responseCachePartitionHeaders = Arrays.asList("Accept-Language", "Authorization", "Cookie");
+	
+	//Attach GET requests to an identical one already in flight instead of executing them again
+	protected boolean coalesceRequests = false;
 	
 	protected int connectionTimeout = 7000;
 	protected int writeTimeout = 4000;
@@ -62,45 +93,152 @@ public abstract class WebServiceModel<T extends WebServiceResponse> extends Live
 
 	/**
 	 * Must call this method after instanciate a new WebServiceAPI object to setup the service
+	 * Models returning the same web service key share the same client and service proxy, by default every model has its own
 	 * @param webServiceComponent
 	 * @param service
 	 */
 	protected<V> V setupWebService(WebServiceComponent webServiceComponent, final Class<V> service){
 
-		OkHttpClient.Builder okHttpBuilder = new OkHttpClient.Builder()
-				
-				//Common Connection Objects
-				.dispatcher(webServiceComponent.getWebServiceConfiguration().getDispatcher())
+		this.webServiceComponent = webServiceComponent;
+		this.httpLogger = newHttpLogger(webServiceComponent, this);
+
+		String key = provideWebServiceKey(service);
+
+		//Private service, nothing to share
+		if( key == null ){
+			return createWebService(webServiceComponent, service, httpLogger);
+		}
+
+		synchronized (webServiceComponent){
+			WebServiceComponent.SharedWebService sharedWebService = webServiceComponent.getSharedWebService(key);
+
+			//Calls not executed by a model are logged to the default logger
+			if( sharedWebService == null ){
+				HttpLogInterceptor.Logger logger = newHttpLogger(webServiceComponent, HttpLogInterceptor.Logger.DEFAULT);
+				sharedWebService = new WebServiceComponent.SharedWebService(createWebService(webServiceComponent, service, logger));
+				webServiceComponent.putSharedWebService(key, sharedWebService);
+			}
+
+			return service.cast(sharedWebService.service);
+		}
+	}
+
+
+	/**
+	 * Key used to share the service between models of the same component, null for a private service.
+	 * Models whose setupOkHttp does not depend on instance state can return {@link #sharedWebServiceKey(Class)}
+	 */
+	protected String provideWebServiceKey(Class<?> service){
+		return null;
+	}
+	
+	
+	/**
+	 * Model class, service and every attribute used to customize the client
+	 */
+	protected final String sharedWebServiceKey(Class<?> service){
+		return getClass().getName() + "|" + service.getName()
+				+ "|" + connectionTimeout + "|" + writeTimeout + "|" + readTimeout
+				+ "|" + logLevel + "|" + logMaxBodyBytes + "|" + asyncLog
+				+ "|" + logCondition + "|" + logSampleRate + "|" + logSlowThresholdMs + "|" + logConnectionPhases;
+	}
 
-				//TODO: Check if can use current Connection Pool configuration
-				//connectionPool(webServiceComponent.getWebServiceConfiguration().getConnectionPool())
 
+	private<V> V createWebService(WebServiceComponent webServiceComponent, final Class<V> service, HttpLogInterceptor.Logger logger){
+
+		//Derive from the shared client so the connection pool and dispatcher are reused
+		OkHttpClient.Builder okHttpBuilder = webServiceComponent.getOkHttpClient().newBuilder()
 
 				//Timeout
 				.connectTimeout(connectionTimeout, TimeUnit.MILLISECONDS)
 				.writeTimeout(writeTimeout, TimeUnit.MILLISECONDS)
-				.readTimeout(readTimeout, TimeUnit.MILLISECONDS)
-				
-				//Never Retry On Connection Failure
-				.retryOnConnectionFailure(false);
+				.readTimeout(readTimeout, TimeUnit.MILLISECONDS);
 		
 		
 		
-		//Logging
-		HttpLogInterceptor interceptor = new HttpLogInterceptor(this);
+		//Logging, each call is logged by the model that executed it
+		HttpLogInterceptor interceptor = new HttpLogInterceptor(logger);
 		interceptor.setLevel(logLevel);
+		interceptor.setMaxBodyBytes(logMaxBodyBytes);
+		interceptor.setCondition(logCondition);
+		interceptor.setSampleRate(logSampleRate);
+		interceptor.setSlowThresholdMs(logSlowThresholdMs);
 		okHttpBuilder.addInterceptor(interceptor);
 		
 		
+		//Phases of every call, optionally appended to the response log line
+		ConnectionPhaseMetrics connectionPhaseMetrics = webServiceComponent.getWebServiceConfiguration().getConnectionPhaseMetrics();
+		if( connectionPhaseMetrics != null ){
+			okHttpBuilder.eventListenerFactory(connectionPhaseMetrics);
+			if( logConnectionPhases ){
+				interceptor.setConnectionPhaseMetrics(connectionPhaseMetrics);
+			}
+		}
+		
+		
+		//Round trip of the limited requests, measured on the network
+		ConcurrencyLimiter concurrencyLimiter = webServiceComponent.getWebServiceConfiguration().getConcurrencyLimiter();
+		if( concurrencyLimiter != null ){
+			okHttpBuilder.addNetworkInterceptor(concurrencyLimiter.newInterceptor());
+		}
+		
+		
+		//Streamed arrays, the converter finds the listener of the call through the interceptor
+		StreamingJsonConverterFactory streamingConverterFactory = webServiceComponent.getWebServiceConfiguration().getStreamingConverterFactory();
+		if( streamingConverterFactory != null ){
+			okHttpBuilder.addInterceptor(streamingConverterFactory.newInterceptor());
+		}
+		
+		
+		//Compact formats, negotiated with the Accept header
+		WireFormatConverterFactory wireFormatConverterFactory = webServiceComponent.getWebServiceConfiguration().getWireFormatConverterFactory();
+		if( wireFormatConverterFactory != null ){
+			okHttpBuilder.addInterceptor(wireFormatConverterFactory.newInterceptor());
+		}
+		
+		
 		//Give dev opportunity to change OkHttp config
 		setupOkHttp(okHttpBuilder);
 		
 		
-		//Create Retrofit
-		Retrofit retrofit = new Retrofit.Builder()
+		//Disk cache, innermost so its cache probe is not logged or measured as an exchange. Stale responses
+		//are revalidated in background through the same chain without the cache interceptor, so they
+		//carry the same headers and logs
+		WebServiceCache webServiceCache = webServiceComponent.getWebServiceConfiguration().getWebServiceCache();
+		if( webServiceCache != null ){
+			OkHttpClient revalidationClient = okHttpBuilder.build();
+			okHttpBuilder.addInterceptor(webServiceCache.newInterceptor(revalidationClient));
+		}
+		
+		
+		//Bytes of the body read by the converter, outermost to count the responses of every layer
+		ResponseCache responseCache = webServiceComponent.getWebServiceConfiguration().getResponseCache();
+		if( responseCache != null ){
+			okHttpBuilder.interceptors().add(0, responseCache.newInterceptor());
+		}
+		
+		
+		//Create Retrofit, the calls know the type of their body
+		Retrofit.Builder retrofitBuilder = new Retrofit.Builder()
 				.baseUrl(webServiceComponent.getBaseUrl())
+				.addCallAdapterFactory(TypedCall.FACTORY);
+		
+		if( streamingConverterFactory != null ){
+			retrofitBuilder.addConverterFactory(streamingConverterFactory);
+		}
+		
+		Executor callbackExecutor = webServiceComponent.getWebServiceConfiguration().getCallbackExecutor();
+		if( callbackExecutor != null ){
+			retrofitBuilder.callbackExecutor(callbackExecutor);
+		}
+		
+		if( wireFormatConverterFactory != null ){
+			retrofitBuilder.addConverterFactory(wireFormatConverterFactory);
+		}
+		
+		Retrofit retrofit = retrofitBuilder
 				.addConverterFactory(webServiceComponent.getWebServiceConfiguration().getGsonConverterFactory())
-				.client(okHttpBuilder.build())
+				.callFactory(new RequestTag.Factory(okHttpBuilder.build()))
 				.build();
 		
 		
@@ -112,6 +250,66 @@ public abstract class WebServiceModel<T extends WebServiceResponse> extends Live
 	protected void setupOkHttp(OkHttpClient.Builder okHttpBuilder){};
 	
 	
+	/**
+	 * Logger of the http log, written from the log sink thread when async
+	 */
+	private HttpLogInterceptor.Logger newHttpLogger(WebServiceComponent webServiceComponent, HttpLogInterceptor.Logger logger){
+		if( asyncLog && logLevel != HttpLogInterceptor.Level.DISABLE ){
+			return new AsyncHttpLogger(logger, webServiceComponent.getWebServiceConfiguration().getAsyncLogSink());
+		}
+		return logger;
+	}
+	
+	
+	/**
+	 * Post an event to the observers. When callbacks run on a background executor the event is
+	 * switched to the main thread, otherwise it is posted right away
+	 */
+	protected void postOnMainThread(final Event event){
+		runOnMainThread(new Runnable() {
+			@Override
+			public void run() {
+				post(event);
+			}
+		});
+	}
+	
+	
+	/**
+	 * End of the request reported to the state API, its events are posted from the same thread as the model events
+	 */
+	private void postRequestResponse(Call<T> call){
+		final String host = call.request().url().host();
+		runOnMainThread(new Runnable() {
+			@Override
+			public void run() {
+				mWebServiceStateAPI.onRequestResponse(host, WebServiceModel.this.getClass());
+			}
+		});
+	}
+	
+	
+	private void runOnMainThread(Runnable runnable){
+		Executor callbackExecutor = webServiceComponent != null ? webServiceComponent.getWebServiceConfiguration().getCallbackExecutor() : null;
+		if( callbackExecutor == null ){
+			runnable.run();
+			return;
+		}
+		
+		webServiceComponent.getWebServiceConfiguration().getMainThreadExecutor().execute(runnable);
+	}
+	
+	
+	/**
+	 * Executor of the Retrofit callbacks
+	 */
+	private Executor callbackThreadExecutor(){
+		WebServiceConfiguration configuration = webServiceComponent.getWebServiceConfiguration();
+		Executor callbackExecutor = configuration.getCallbackExecutor();
+		return callbackExecutor != null ? callbackExecutor : configuration.getMainThreadExecutor();
+	}
+	
+	
 	
 	@Override
 	public void log(String message) {
@@ -136,30 +334,345 @@ public abstract class WebServiceModel<T extends WebServiceResponse> extends Live
 	
 	
 	//Execution Atributes
-	public boolean waitingResponse = false;
-	public long requestTime = 0;
+	public volatile boolean waitingResponse = false;
+	public volatile long requestTime = 0;
+	
+	
+	/**
+	 * Request lifecycle events a model posts, remove the ones no observer needs
+	 */
+	public enum LifecycleEvent {
+		REQUEST_EXECUTED,
+		RESPONSE_RECEIVED,
+		ERROR,
+		REQUEST_ERROR
+	}
+	
+	protected Set<LifecycleEvent> lifecycleEvents = EnumSet.allOf(LifecycleEvent.class);
+	
+	//Events only carry the caller, the same immutable instances are posted on every request
+	private final WebServiceRequestExecutedEvent requestExecutedEvent = new WebServiceRequestExecutedEvent(this);
+	private final WebServiceResponseReceivedEvent responseReceivedEvent = new WebServiceResponseReceivedEvent(this);
+	private final WebServiceErrorEvent errorEvent = new WebServiceErrorEvent(this);
+	private final RequestError requestError = new RequestError(this);
+	private final NoInternetEvent noInternetEvent = new NoInternetEvent(this);
+	private final TimeoutEvent timeoutEvent = new TimeoutEvent(this);
+	private final GenericRequestError genericRequestError = new GenericRequestError(this);
+	private final CircuitOpenEvent circuitOpenEvent = new CircuitOpenEvent(this);
+	private final QueueTimeoutEvent queueTimeoutEvent = new QueueTimeoutEvent(this);
+	
+	//Requests in flight, each call tracked on its own record
+	private final ConcurrentHashMap<Call<T>, RequestRecord> requestsInFlight = new ConcurrentHashMap<>();
 	
 	public boolean isWaitingResponse() {
-		return waitingResponse;
+		return !requestsInFlight.isEmpty();
+	}
+	
+	
+	public int getRequestsInFlight() {
+		return requestsInFlight.size();
+	}
+	
+	
+	/**
+	 * System.nanoTime() when the call was executed, or -1 if the call is not in flight
+	 */
+	public long getRequestStartNanos(Call<T> call) {
+		RequestRecord record = requestsInFlight.get(call);
+		return record == null ? -1 : record.startNanos;
+	}
+	
+	
+	/**
+	 * Cancel one request in flight, its failure is still delivered to onFailure
+	 */
+	public void cancelRequest(final Call<T> call) {
+		RequestRecord record = requestsInFlight.get(call);
+		if( record == null )
+			return;
+		
+		call.cancel();
+		
+		//Attached to an identical request, never enqueued, so its failure is delivered here
+		if( record.coalesceFollower
+				&& webServiceComponent.getWebServiceConfiguration().getRequestCoalescer().leave(record.coalesceKey, call) ){
+			callbackThreadExecutor().execute(new Runnable() {
+				@Override
+				public void run() {
+					onFailure(call, new IOException("Canceled"));
+				}
+			});
+		}
+	}
+	
+	
+	public void cancelAllRequests() {
+		for (Call<T> call : requestsInFlight.keySet()) {
+			cancelRequest(call);
+		}
+	}
+	
+	
+	//Priority of the calls being executed with executeRequest(Call, RequestPriority)
+	private final ConcurrentHashMap<Call<T>, RequestPriority> priorities = new ConcurrentHashMap<>();
+	
+	
+	/**
+	 * Execute async call to the server with the given priority. Every execution, including executeAsync,
+	 * executeSync, streamed requests and publishers, goes through executeRequest(Call), the method to
+	 * override to act on each request.
+	 * The priority only orders the requests queued by the ConcurrencyLimiter, it is ignored when
+	 * the configuration provides none
+	 */
+	protected final void executeRequest(Call<T> call, RequestPriority priority) {
+		if( priority != RequestPriority.NORMAL && getConcurrencyLimiter() == null ){
+			Logger.D(this, "Priority " + priority + " ignored, no ConcurrencyLimiter configured");
+		}
+		
+		priorities.put(call, priority);
+		try {
+			executeRequest(call);
+		} finally {
+			priorities.remove(call);
+		}
 	}
 	
 	
 	//Execute async call to the server
 	@CallSuper
-	protected void executeRequest(Call<T> call) {
+	protected void executeRequest(final Call<T> call) {
 
+		RequestPriority priority = priorities.isEmpty() ? null : priorities.get(call);
+		if( priority == null ){
+			priority = RequestPriority.NORMAL;
+		}
+		
+		
+		//Http log of the call written by this model, even on a shared service
+		RequestTag tag = RequestTag.of(call.request());
+		if( tag != null ){
+			tag.logger = httpLogger;
+		}
+		
+		
 		if( handleResponse )
-			mWebServiceStateAPI.onRequestExecuted();
+			mWebServiceStateAPI.onRequestExecuted(call.request().url().host(), getClass());
 
 
-		post(new WebServiceRequestExecutedEvent(this));
+		if( lifecycleEvents.contains(LifecycleEvent.REQUEST_EXECUTED) )
+			postOnMainThread(requestExecutedEvent);
 
 		
+		RequestRecord record = new RequestRecord(System.nanoTime());
+		record.streaming = isStreaming(call);
+		requestsInFlight.put(call, record);
 		waitingResponse = true;
-		requestTime = new Date().getTime();
+		
+		
+		//Type the body is decoded to, responses are only shared between calls of the same type
+		Type responseType = TypedCall.responseTypeOf(call);
+		
+		
+		//Fresh decoded response, skip network and parsing
+		ResponseCache responseCache = getResponseCache();
+		if( responseCache != null && responseType != null && !record.streaming ){
+			String partition = provideResponseCachePartition();
+			responseCache.usePartition(partition);
+			
+			@SuppressWarnings("unchecked")
+			T cached = (T) responseCache.get(ResponseCache.keyOf(call.request(), responseType, partition, responseCacheHeaders));
+			if( cached != null ){
+				record.fromResponseCache = true;
+				
+				//Delivered on the callback thread like a response from the network
+				final Response<T> response = Response.success(cached);
+				callbackThreadExecutor().execute(new Runnable() {
+					@Override
+					public void run() {
+						onResponse(call, response);
+					}
+				});
+				return;
+			}
+		}
+		
+		
+		//Identical request in flight, wait for its response
+		RequestCoalescer requestCoalescer = getRequestCoalescer();
+		if( requestCoalescer != null && responseType != null && !record.streaming && "GET".equals(call.request().method()) ){
+			final String key = ResponseCache.keyOf(call.request(), responseType, provideResponseCachePartition(), responseCacheHeaders);
+			final RequestPriority followerPriority = priority;
+			final RequestRecord followerRecord = record;
+			record.coalesceKey = key;
+			record.coalesceFollower = true;
+			
+			//Leader cancelled, this call executes the request for the remaining followers
+			boolean leader = requestCoalescer.join(key, call, this, new Runnable() {
+				@Override
+				public void run() {
+					followerRecord.coalesceFollower = false;
+					send(call, followerPriority, followerRecord);
+				}
+			});
+			if( !leader ){
+				return;
+			}
+			record.coalesceFollower = false;
+		}
+		
+		send(call, priority, record);
+	}
+	
+	
+	private void send(final Call<T> call, RequestPriority priority, RequestRecord record) {
+		
+		//Host failing, fail fast without sending the request
+		CircuitBreaker circuitBreaker = getCircuitBreaker();
+		if( circuitBreaker != null ){
+			final String host = call.request().url().host();
+			record.circuitPermit = circuitBreaker.tryAcquire(host);
+			if( record.circuitPermit == null ){
+				record.circuitRejected = true;
+				
+				//Delivered on the callback thread like any other failure
+				callbackThreadExecutor().execute(new Runnable() {
+					@Override
+					public void run() {
+						onFailure(call, new CircuitOpenException(host));
+					}
+				});
+				return;
+			}
+		}
+		
+		
+		//Wait for a slot of the host when it is at its concurrency limit
+		ConcurrencyLimiter concurrencyLimiter = getConcurrencyLimiter();
+		if( concurrencyLimiter != null ){
+			enqueueLimited(concurrencyLimiter, call, priority, record);
+			return;
+		}
 		
 		call.enqueue(this);
 	}
+	
+	
+	private void enqueueLimited(ConcurrencyLimiter concurrencyLimiter, final Call<T> call, RequestPriority priority, final RequestRecord record) {
+		final String host = call.request().url().host();
+		concurrencyLimiter.submit(host, priority, new ConcurrencyLimiter.Task() {
+			@Override
+			public void start() {
+				record.limiterPermit = true;
+				call.enqueue(WebServiceModel.this);
+			}
+			
+			@Override
+			public void reject() {
+				CircuitBreaker.Permit circuitPermit = record.circuitPermit;
+				if( circuitPermit != null ){
+					record.circuitPermit = null;
+					getCircuitBreaker().release(host, circuitPermit);
+				}
+				record.limiterRejected = true;
+				
+				//Delivered on the callback thread like any other failure
+				callbackThreadExecutor().execute(new Runnable() {
+					@Override
+					public void run() {
+						onFailure(call, new RequestQueueTimeoutException(host));
+					}
+				});
+			}
+		});
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// Future and blocking execution
+	///////////////////////////////////////////////////////////////////////////
+	
+	//Calls executed with executeAsync, completed once the model handled their outcome
+	private final ConcurrentHashMap<Call<T>, ResponseFuture<T>> futures = new ConcurrentHashMap<>();
+	
+	
+	protected ResponseFuture<T> executeAsync(Call<T> call) {
+		return executeAsync(call, RequestPriority.NORMAL);
+	}
+	
+	
+	/**
+	 * Execute the request like executeRequest, the outcome is still classified by the model
+	 * and then completes the returned future
+	 */
+	protected ResponseFuture<T> executeAsync(Call<T> call, RequestPriority priority) {
+		ResponseFuture<T> future = new ResponseFuture<>(call);
+		futures.put(call, future);
+		try {
+			executeRequest(call, priority);
+		} catch (RuntimeException e) {
+			futures.remove(call);
+			throw e;
+		}
+		return future;
+	}
+	
+	
+	protected T executeSync(Call<T> call) throws IOException {
+		return executeSync(call, RequestPriority.NORMAL);
+	}
+	
+	
+	/**
+	 * Execute the request and wait for its body. Throws the failure classified by the model,
+	 * or an HttpStatusException for a non success code. Never call it from the main thread,
+	 * where the callbacks are delivered
+	 */
+	protected T executeSync(Call<T> call, RequestPriority priority) throws IOException {
+		//No main looper on the JVM of the unit tests
+		Looper mainLooper = Looper.getMainLooper();
+		if( mainLooper != null && Looper.myLooper() == mainLooper )
+			throw new IllegalStateException("executeSync called from the main thread");
+		
+		ResponseFuture<T> future = executeAsync(call, priority);
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for " + call.request().url());
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if( cause instanceof IOException ) throw (IOException) cause;
+			if( cause instanceof RuntimeException ) throw (RuntimeException) cause;
+			if( cause instanceof Error ) throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+	
+	
+	private void completeFuture(Call<T> call, Response<T> response) {
+		ResponseFuture<T> future = futures.isEmpty() ? null : futures.remove(call);
+		if( future == null )
+			return;
+		
+		int code = response.code();
+		if( code >= 200 && code <= 207 ){
+			future.complete(response.body());
+		}
+		else{
+			future.completeExceptionally(new HttpStatusException(response));
+		}
+	}
+	
+	
+	private void failFuture(Call<T> call, Throwable error) {
+		ResponseFuture<T> future = futures.isEmpty() ? null : futures.remove(call);
+		if( future != null ){
+			future.completeExceptionally(error);
+		}
+	}
 
 
 
@@ -185,51 +698,64 @@ public abstract class WebServiceModel<T extends WebServiceResponse> extends Live
 	@Override
 	@CallSuper
 	public void onResponse(Call<T> call, Response<T> response) {
-		waitingResponse = false;
-		requestTime = new Date().getTime() - requestTime;
-		
-		if( ! handleResponse )
-			return;
+		try {
+			RequestRecord record = finishRequest(call, outcomeOf(response.code()));
+			
+			if( record != null && !record.fromResponseCache && !record.coalesceFollower && !record.streaming && response.isSuccessful() ){
+				cacheResponse(call, response);
+			}
+			
+			if( record != null && record.coalesceKey != null && !record.coalesceFollower ){
+				RequestCoalescer.deliverResponse(webServiceComponent.getWebServiceConfiguration().getRequestCoalescer().complete(record.coalesceKey), response);
+			}
+			
+			if( ! handleResponse )
+				return;
 
 
-		int code = response.code();
-		
-		
-		if(  code >= 200 && code <= 207 ) {
-			onSuccess(code, response.body());
-			post(new WebServiceResponseReceivedEvent(this));
+			int code = response.code();
+			
+			
+			if(  code >= 200 && code <= 207 ) {
+				onSuccess(code, response.body());
+				if( lifecycleEvents.contains(LifecycleEvent.RESPONSE_RECEIVED) )
+					postOnMainThread(responseReceivedEvent);
 
-			if( handleResponse ){
-				mWebServiceStateAPI.onRequestResponse();
-			}
+				if( handleResponse ){
+					postRequestResponse(call);
+				}
 
-			return;
-		}
+				return;
+			}
 
-		
-		onRequestError();
-		
-		
-		if( code >= 300 && code <= 307 ){
-			onRedirect(code, call, response);
-		}
-		
-		else if( code >= 400 && code <= 424 ){
-			onClientError(code, call, response);
-		}
-		
-		else if( code >= 500 && code <= 507 ){
-			onServerError(code, call, response);
-		}
-		else{
-			onGenericRequestError();
-		}
+			
+			onRequestError();
+			
+			
+			if( code >= 300 && code <= 307 ){
+				onRedirect(code, call, response);
+			}
+			
+			else if( code >= 400 && code <= 424 ){
+				onClientError(code, call, response);
+			}
+			
+			else if( code >= 500 && code <= 507 ){
+				onServerError(code, call, response);
+			}
+			else{
+				onGenericRequestError();
+			}
 
-		post(new WebServiceErrorEvent(this));
+			if( lifecycleEvents.contains(LifecycleEvent.ERROR) )
+				postOnMainThread(errorEvent);
 
 
-		if( handleResponse ){
-			mWebServiceStateAPI.onRequestResponse();
+			if( handleResponse ){
+				postRequestResponse(call);
+			}
+		} finally {
+			completeFuture(call, response);
 		}
 	}
 	
@@ -249,46 +775,430 @@ public abstract class WebServiceModel<T extends WebServiceResponse> extends Live
 	@Override
 	@CallSuper
 	public void onFailure(Call<T> call, Throwable error) {
-		waitingResponse = false;
-		requestTime = new Date().getTime() - requestTime;
-		
-		if( !handleResponse )
-			return;
+		try {
+			RequestRecord record = finishRequest(call, outcomeOf(error));
+			
+			if( record != null && record.coalesceKey != null && !record.coalesceFollower ){
+				completeFlight(call, record.coalesceKey, error);
+			}
+			
+			if( !handleResponse )
+				return;
+			
+			onRequestError();
+			
+			
+			if( error instanceof CircuitOpenException){
+				onCircuitOpen(call, (CircuitOpenException) error);
+			}
+			
+			else if( error instanceof RequestQueueTimeoutException){
+				onQueueTimeout(call, (RequestQueueTimeoutException) error);
+			}
+			
+			else if( error instanceof ConnectException){
+				onNoInternetConnection();
+			}
+			
+			else if( error instanceof SocketTimeoutException){
+				onTimeout();
+			}
+			
+			else if( error instanceof UnknownHostException){
+				onUnknownHostException(call, error);
+			}
+			
+			else if( error instanceof MalformedJsonException){
+				onJsonError(call, error);
+			}
+			
+			else if( error instanceof JsonSyntaxException){
+				onJsonError( call, error);
+			}
+			
+			else{
+				onRequestFailure(call, error);
+			}
+
+
+			if( lifecycleEvents.contains(LifecycleEvent.ERROR) )
+				postOnMainThread(errorEvent);
+
+
+			if( handleResponse ){
+				postRequestResponse(call);
+			}
+		} finally {
+			failFuture(call, error);
+		}
+	}
+	
+	
+	
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// Metrics
+	///////////////////////////////////////////////////////////////////////////
+	
+	private RequestRecord finishRequest(Call<T> call, WebServiceMetrics.Outcome outcome) {
+		RequestRecord record = requestsInFlight.remove(call);
+		waitingResponse = !requestsInFlight.isEmpty();
 		
-		onRequestError();
+		if( record != null && record.streaming ){
+			webServiceComponent.getWebServiceConfiguration().getStreamingConverterFactory().unregister(call.request());
+		}
 		
+		//Call not executed by this model, answered from memory, by an identical request or failed fast
+		if( record == null || record.fromResponseCache || record.coalesceFollower || record.circuitRejected || record.limiterRejected )
+			return record;
 		
-		if( error instanceof ConnectException){
-			onNoInternetConnection();
+		if( record.limiterPermit ){
+			RequestTag tag = RequestTag.of(call.request());
+			webServiceComponent.getWebServiceConfiguration().getConcurrencyLimiter().release(
+					call.request().url().host(),
+					WebServiceMetrics.endpointOf(call.request()),
+					tag != null ? tag.rttNanos : -1,
+					outcome == WebServiceMetrics.Outcome.TIMEOUT || outcome == WebServiceMetrics.Outcome.SERVER_ERROR
+			);
 		}
 		
-		else if( error instanceof SocketTimeoutException){
-			onTimeout();
-		}
+		long durationNanos = System.nanoTime() - record.startNanos;
+		requestTime = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+		mWebServiceStateAPI.onRequestMeasured(WebServiceMetrics.endpointOf(call.request()), durationNanos, outcome);
 		
-		else if( error instanceof UnknownHostException){
-			onUnknownHostException(call, error);
+		if( record.circuitPermit != null ){
+			webServiceComponent.getWebServiceConfiguration().getCircuitBreaker()
+					.record(call.request().url().host(), record.circuitPermit, outcome, durationNanos);
 		}
-		
-		else if( error instanceof MalformedJsonException){
-			onJsonError(call, error);
+		return record;
+	}
+	
+	
+	/**
+	 * Failure of the leader of a flight, a cancelled leader hands the flight to its first follower
+	 * instead of failing all of them
+	 */
+	private void completeFlight(Call<T> call, String key, Throwable error) {
+		RequestCoalescer requestCoalescer = webServiceComponent.getWebServiceConfiguration().getRequestCoalescer();
+		if( call.isCanceled() ){
+			RequestCoalescer.Follower follower = requestCoalescer.promote(key);
+			if( follower != null ){
+				follower.lead();
+				return;
+			}
 		}
+		RequestCoalescer.deliverFailure(requestCoalescer.complete(key), error);
+	}
+	
+	
+	private static final class RequestRecord {
+		
+		final long startNanos;
+		volatile boolean fromResponseCache;
+		volatile boolean streaming;
+		volatile String coalesceKey;
+		volatile boolean coalesceFollower;
+		volatile CircuitBreaker.Permit circuitPermit;
+		volatile boolean circuitRejected;
+		volatile boolean limiterPermit;
+		volatile boolean limiterRejected;
 		
-		else if( error instanceof JsonSyntaxException){
-			onJsonError( call, error);
+		RequestRecord(long startNanos) {
+			this.startNanos = startNanos;
 		}
+	}
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// Response Cache
+	///////////////////////////////////////////////////////////////////////////
+	
+	private ResponseCache getResponseCache() {
+		if( responseCacheTtlMs <= 0 || webServiceComponent == null )
+			return null;
+		return webServiceComponent.getWebServiceConfiguration().getResponseCache();
+	}
+	
+	
+	/**
+	 * Identity of the user and state the decoded responses depend on, like the user id or the language the
+	 * interceptors of setupOkHttp send. It is part of the ResponseCache key, and the cache is cleared when it changes.
+	 * Without partition, responses whose responseCachePartitionHeaders were set by an interceptor are not cached
+	 */
+	protected String provideResponseCachePartition(){
+		return null;
+	}
+	
+	
+	private void cacheResponse(Call<T> call, Response<T> response) {
+		ResponseCache responseCache = getResponseCache();
+		Type responseType = TypedCall.responseTypeOf(call);
+		if( responseCache == null || responseType == null || response.body() == null )
+			return;
 		
-		else{
-			onRequestFailure(call, error);
+		Request request = call.request();
+		if( !"GET".equals(request.method()) )
+			return;
+		
+		String partition = provideResponseCachePartition();
+		if( partition == null && !sameHeaders(request, response.raw().request(), responseCachePartitionHeaders) )
+			return;
+		
+		responseCache.usePartition(partition);
+		responseCache.put(
+				ResponseCache.keyOf(request, responseType, partition, responseCacheHeaders),
+				request.url().encodedPath(),
+				response.body(),
+				ResponseCache.bodyBytesOf(request),
+				responseCacheTtlMs
+		);
+	}
+	
+	
+	/**
+	 * Whether the request sent has the headers of the request of the call, none added or changed by an interceptor
+	 */
+	private static boolean sameHeaders(Request request, Request sent, List<String> names) {
+		for (int i = 0, count = names.size(); i < count; i++) {
+			if( !request.headers(names.get(i)).equals(sent.headers(names.get(i))) ){
+				return false;
+			}
 		}
-
-
-		post(new WebServiceErrorEvent(this));
-
-
-		if( handleResponse ){
-			mWebServiceStateAPI.onRequestResponse();
+		return true;
+	}
+	
+	
+	/**
+	 * Drop the decoded responses of every endpoint whose path starts with the prefix
+	 */
+	protected void invalidateResponseCache(String pathPrefix) {
+		if( webServiceComponent != null ){
+			ResponseCache responseCache = webServiceComponent.getWebServiceConfiguration().getResponseCache();
+			if( responseCache != null ){
+				responseCache.invalidate(pathPrefix);
+			}
+		}
+	}
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// Streamed Arrays
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Execute a call whose service method is annotated with {@link StreamArray}, the elements of the
+	 * array are delivered to onItemsStreamed in chunks while the body is read, and the response with
+	 * the array left empty to onSuccess. Streamed responses are never cached or coalesced.
+	 */
+	protected void executeStreamingRequest(Call<T> call) {
+		executeStreamingRequest(call, RequestPriority.NORMAL);
+	}
+	
+	
+	protected void executeStreamingRequest(Call<T> call, RequestPriority priority) {
+		StreamingJsonConverterFactory streamingConverterFactory = webServiceComponent.getWebServiceConfiguration().getStreamingConverterFactory();
+		if( streamingConverterFactory != null ){
+			streamingConverterFactory.register(call.request(), new StreamingJsonConverterFactory.ChunkListener() {
+				@Override
+				public void onChunk(List<?> items) {
+					onItemsStreamed(items);
+				}
+			});
 		}
+		executeRequest(call, priority);
+	}
+	
+	
+	/**
+	 * Chunk of a streamed array, called on the network thread before the response is complete
+	 */
+	protected void onItemsStreamed(List<?> items) {
+		final ItemsStreamedEvent event = new ItemsStreamedEvent(this, items);
+		webServiceComponent.getWebServiceConfiguration().getMainThreadExecutor().execute(new Runnable() {
+			@Override
+			public void run() {
+				post(event);
+			}
+		});
+	}
+	
+	
+	private boolean isStreaming(Call<T> call) {
+		if( webServiceComponent == null )
+			return false;
+		StreamingJsonConverterFactory streamingConverterFactory = webServiceComponent.getWebServiceConfiguration().getStreamingConverterFactory();
+		return streamingConverterFactory != null && streamingConverterFactory.isRegistered(call.request());
+	}
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// Publishers
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Responses of a paginated or polled feed, the next page is only requested when the subscriber
+	 * asked for it, so at most one decoded page waits for the subscriber.
+	 * Pages are delivered on the callback thread, each one classified by the model first
+	 */
+	protected ResponsePublisher<T> publishPages(final ResponsePublisher.PageSource<T> pages) {
+		return new ResponsePublisher<T>() {
+			
+			private volatile T previous;
+			private volatile Call<T> current;
+			
+			@Override
+			protected void onDemand() {
+				fetch();
+			}
+			
+			@Override
+			protected void onCancel() {
+				Call<T> call = current;
+				if( call != null ){
+					call.cancel();
+				}
+			}
+			
+			private void fetch() {
+				Call<T> call;
+				try {
+					call = pages.next(previous);
+				} catch (RuntimeException e) {
+					error(e);
+					return;
+				}
+				
+				if( call == null ){
+					complete();
+					return;
+				}
+				
+				current = call;
+				executeAsync(call).addListener(new ResponseFuture.Listener<T>() {
+					@Override
+					public void onSuccess(T body) {
+						previous = body;
+						if( next(body) ){
+							fetch();
+						}
+					}
+					
+					@Override
+					public void onError(Throwable error) {
+						error(error);
+					}
+				});
+			}
+		};
+	}
+	
+	
+	/**
+	 * Elements of the array streamed by a {@link StreamArray} call. The call is executed on the first
+	 * request of the subscriber, and the thread reading the response waits for the demand before
+	 * delivering every element, so a slow subscriber pauses the network read and at most one chunk
+	 * of decoded elements is held. Elements are delivered on the network thread
+	 */
+	protected <E> ResponsePublisher<E> publishStreamedItems(final Call<T> call) {
+		return new ResponsePublisher<E>() {
+			
+			private final AtomicBoolean started = new AtomicBoolean();
+			
+			@Override
+			protected void onDemand() {
+				if( !started.compareAndSet(false, true) )
+					return;
+				
+				StreamingJsonConverterFactory streamingConverterFactory = webServiceComponent.getWebServiceConfiguration().getStreamingConverterFactory();
+				if( streamingConverterFactory == null ){
+					error(new IllegalStateException("No StreamingJsonConverterFactory configured"));
+					return;
+				}
+				
+				streamingConverterFactory.register(call.request(), new StreamingJsonConverterFactory.ChunkListener() {
+					@Override
+					@SuppressWarnings("unchecked")
+					public void onChunk(List<?> items) {
+						for (Object item : items) {
+							//Cancelled, the call fails on its next read
+							if( !awaitDemand() )
+								return;
+							next((E) item);
+						}
+					}
+				});
+				
+				executeAsync(call).addListener(new ResponseFuture.Listener<T>() {
+					@Override
+					public void onSuccess(T body) {
+						complete();
+					}
+					
+					@Override
+					public void onError(Throwable error) {
+						error(error);
+					}
+				});
+			}
+			
+			@Override
+			protected void onCancel() {
+				call.cancel();
+			}
+		};
+	}
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// Circuit Breaker
+	///////////////////////////////////////////////////////////////////////////
+	
+	private CircuitBreaker getCircuitBreaker() {
+		if( webServiceComponent == null )
+			return null;
+		return webServiceComponent.getWebServiceConfiguration().getCircuitBreaker();
+	}
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// Concurrency Limiter
+	///////////////////////////////////////////////////////////////////////////
+	
+	private ConcurrencyLimiter getConcurrencyLimiter() {
+		if( webServiceComponent == null )
+			return null;
+		return webServiceComponent.getWebServiceConfiguration().getConcurrencyLimiter();
+	}
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// Request Coalescing
+	///////////////////////////////////////////////////////////////////////////
+	
+	private RequestCoalescer getRequestCoalescer() {
+		if( !coalesceRequests || webServiceComponent == null )
+			return null;
+		return webServiceComponent.getWebServiceConfiguration().getRequestCoalescer();
+	}
+	
+	
+	static WebServiceMetrics.Outcome outcomeOf(int code) {
+		if( code >= 200 && code <= 207 ) return WebServiceMetrics.Outcome.SUCCESS;
+		if( code >= 400 && code <= 499 ) return WebServiceMetrics.Outcome.CLIENT_ERROR;
+		if( code >= 500 && code <= 599 ) return WebServiceMetrics.Outcome.SERVER_ERROR;
+		return WebServiceMetrics.Outcome.OTHER;
+	}
+	
+	
+	static WebServiceMetrics.Outcome outcomeOf(Throwable error) {
+		//Host down or device offline, told apart by the CircuitBreaker
+		if( error instanceof ConnectException ) return WebServiceMetrics.Outcome.NO_INTERNET;
+		if( error instanceof SocketTimeoutException ) return WebServiceMetrics.Outcome.TIMEOUT;
+		if( error instanceof MalformedJsonException || error instanceof JsonSyntaxException ) return WebServiceMetrics.Outcome.JSON_ERROR;
+		return WebServiceMetrics.Outcome.OTHER;
 	}
 	
 	
@@ -313,7 +1223,7 @@ public abstract class WebServiceModel<T extends WebServiceResponse> extends Live
 	 * Method is called on success ( code == 2xx ) of WebServiceAPI call
 	 */
 	protected void onSuccess(int code, T body){
-		post(body);
+		postOnMainThread(body);
 	}
 	
 	
@@ -321,7 +1231,8 @@ public abstract class WebServiceModel<T extends WebServiceResponse> extends Live
 	 * This error is thrown for any case that is successfull( code != 2xx )
 	 */
 	protected void onRequestError() {
-		post( new RequestError(this));
+		if( lifecycleEvents.contains(LifecycleEvent.REQUEST_ERROR) )
+			postOnMainThread(requestError);
 	}
 	
 	
@@ -340,19 +1251,36 @@ public abstract class WebServiceModel<T extends WebServiceResponse> extends Live
 	
 	
 	protected void onNoInternetConnection() {
-		post( new NoInternetEvent(this) );
+		postOnMainThread(noInternetEvent);
 	}
 	
 	
 	
 	protected void onTimeout() {
-		post( new TimeoutEvent(this) );
+		postOnMainThread(timeoutEvent);
 	}
 	
 	
 	
 	protected void onGenericRequestError() {
-		post( new GenericRequestError(this) );
+		postOnMainThread(genericRequestError);
+	}
+	
+	
+	
+	/**
+	 * Request not sent because the circuit of its host is open
+	 */
+	protected void onCircuitOpen(Call<T> call, CircuitOpenException error) {
+		postOnMainThread(circuitOpenEvent);
+	}
+	
+	
+	/**
+	 * Request not sent because it waited too long for a slot of its host
+	 */
+	protected void onQueueTimeout(Call<T> call, RequestQueueTimeoutException error) {
+		postOnMainThread(queueTimeoutEvent);
 	}
 	
 	
@@ -400,39 +1328,39 @@ public abstract class WebServiceModel<T extends WebServiceResponse> extends Live
 	// REQUEST RESPONSE EVENTS
 	///////////////////////////////////////////////////////////////////////////
 
-	public class WebServiceRequestExecutedEvent extends Event {
+	public static class WebServiceRequestExecutedEvent extends Event {
 
 		public WebServiceRequestExecutedEvent(Object caller) {
 			this.caller = caller;
 		}
 
-		private Object caller;
+		private final Object caller;
 
 		public Object getCaller() {
 			return caller;
 		}
 
 	}
-	public class WebServiceResponseReceivedEvent extends Event{
+	public static class WebServiceResponseReceivedEvent extends Event{
 		
 		public WebServiceResponseReceivedEvent(Object caller) {
 			this.caller = caller;
 		}
 		
-		private Object caller;
+		private final Object caller;
 		
 		public Object getCaller() {
 			return caller;
 		}
 		
 	}
-	public class WebServiceErrorEvent extends Event{
+	public static class WebServiceErrorEvent extends Event{
 		
 		public WebServiceErrorEvent(Object caller) {
 			this.caller = caller;
 		}
 		
-		private Object caller;
+		private final Object caller;
 		
 		public Object getCaller() {
 			return caller;
@@ -445,13 +1373,13 @@ public abstract class WebServiceModel<T extends WebServiceResponse> extends Live
 	 * This method is called when any request error happen
 	 * != then GenericRequestError that is called when the error is unidentified
 	 */
-	public class RequestError extends Event {
+	public static class RequestError extends Event {
 		
 		public RequestError(Object caller) {
 			this.caller = caller;
 		}
 		
-		private Object caller;
+		private final Object caller;
 		
 		public Object getCaller() {
 			return caller;
@@ -460,23 +1388,65 @@ public abstract class WebServiceModel<T extends WebServiceResponse> extends Live
 	}
 	
 	
-	public class NoInternetEvent extends Event{
+	public static class NoInternetEvent extends Event{
 		public NoInternetEvent(Object caller) {
 			this.caller = caller;
 		}
 		
-		private Object caller;
+		private final Object caller;
 		
 		public Object getCaller() {
 			return caller;
 		}
 	}
-	public class TimeoutEvent extends Event{
+	public static class TimeoutEvent extends Event{
 		public TimeoutEvent(Object caller) {
 			this.caller = caller;
 		}
 		
-		private Object caller;
+		private final Object caller;
+		
+		public Object getCaller() {
+			return caller;
+		}
+	}
+
+	public static class CircuitOpenEvent extends Event{
+		public CircuitOpenEvent(Object caller) {
+			this.caller = caller;
+		}
+		
+		private final Object caller;
+		
+		public Object getCaller() {
+			return caller;
+		}
+	}
+	
+	public static class ItemsStreamedEvent extends Event{
+		public ItemsStreamedEvent(Object caller, List<?> items) {
+			this.caller = caller;
+			this.items = items;
+		}
+		
+		private final Object caller;
+		private final List<?> items;
+		
+		public Object getCaller() {
+			return caller;
+		}
+		
+		public List<?> getItems() {
+			return items;
+		}
+	}
+	
+	public static class QueueTimeoutEvent extends Event{
+		public QueueTimeoutEvent(Object caller) {
+			this.caller = caller;
+		}
+		
+		private final Object caller;
 		
 		public Object getCaller() {
 			return caller;
@@ -486,13 +1456,13 @@ public abstract class WebServiceModel<T extends WebServiceResponse> extends Live
 	/**
 	 * Thrown when the error is unidentified
 	 */
-	public class GenericRequestError extends Event {
+	public static class GenericRequestError extends Event {
 		
 		public GenericRequestError(Object caller) {
 			this.caller = caller;
 		}
 		
-		private Object caller;
+		private final Object caller;
 		
 		public Object getCaller() {
 			return caller;
@@ -4,6 +4,12 @@ import com.lfyt.mobile.android.livemodel.Event;
 import com.lfyt.mobile.android.livemodel.LiveModel;
 import com.lfyt.mobile.android.log.Logger;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Created by rafaeljuliao on 04/05/18.
  */
@@ -17,32 +23,154 @@ public abstract class WebServiceStateAPI extends LiveModel {
 	}
 
 
-	private int executingRequests;
+	private final AtomicInteger executingRequests = new AtomicInteger();
+
+	private final ConcurrentHashMap<String, AtomicInteger> executingRequestsByHost = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, AtomicInteger> executingRequestsByModel = new ConcurrentHashMap<>();
 
-	public class WebServiceStartedRequests extends Event {}
-	public class WebServiceFinishedRequests extends Event{}
+	public static class WebServiceStartedRequests extends Event {}
+	public static class WebServiceFinishedRequests extends Event{}
+	
+	//Stateless, shared by every transition
+	private static final WebServiceStartedRequests STARTED_REQUESTS = new WebServiceStartedRequests();
+	private static final WebServiceFinishedRequests FINISHED_REQUESTS = new WebServiceFinishedRequests();
 
 
 	
-	public final synchronized void onRequestExecuted() {
+	//Last transition posted, guarded by transitionLock
+	private final Object transitionLock = new Object();
+	private boolean startedPosted;
+	
+	
+	/**
+	 * Counted without lock, only the thread that moves the counter from 0 to 1 posts the transition
+	 */
+	public final void onRequestExecuted() {
 
-		if( executingRequests == 0)
+		if( executingRequests.incrementAndGet() == 1 )
 		{
-			post(new WebServiceStartedRequests());
+			postTransition();
 		}
 
-		executingRequests++;
-
 	}
 	
-	public final synchronized void onRequestResponse() {
+	/**
+	 * Counted without lock, only the thread that moves the counter from 1 to 0 posts the transition
+	 */
+	public final void onRequestResponse() {
 
-		executingRequests--;
-		
-		if( executingRequests == 0)
+		if( executingRequests.decrementAndGet() == 0 )
 		{
-			post(new WebServiceFinishedRequests());
+			postTransition();
+		}
+	}
+	
+	
+	/**
+	 * Post the event of the current state when it differs from the last one posted. Edges crossed by
+	 * different threads are serialized here, so started and finished always alternate and the last
+	 * event posted matches the counter
+	 */
+	private void postTransition() {
+		synchronized (transitionLock) {
+			boolean executing = executingRequests.get() > 0;
+			if( executing != startedPosted ){
+				startedPosted = executing;
+				post(executing ? STARTED_REQUESTS : FINISHED_REQUESTS);
+			}
 		}
 	}
 	
+	
+	public final void onRequestExecuted(String host, Class<?> model) {
+		gauge(executingRequestsByHost, host).incrementAndGet();
+		gauge(executingRequestsByModel, model.getName()).incrementAndGet();
+		onRequestExecuted();
+	}
+	
+	
+	public final void onRequestResponse(String host, Class<?> model) {
+		gauge(executingRequestsByHost, host).decrementAndGet();
+		gauge(executingRequestsByModel, model.getName()).decrementAndGet();
+		onRequestResponse();
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// IN FLIGHT GAUGES
+	///////////////////////////////////////////////////////////////////////////
+	
+	public int getExecutingRequests() {
+		return executingRequests.get();
+	}
+	
+	
+	/**
+	 * Requests in flight by host
+	 */
+	public Map<String, Integer> getExecutingRequestsByHost() {
+		return snapshot(executingRequestsByHost);
+	}
+	
+	
+	/**
+	 * Requests in flight by model class name
+	 */
+	public Map<String, Integer> getExecutingRequestsByModel() {
+		return snapshot(executingRequestsByModel);
+	}
+	
+	
+	private static AtomicInteger gauge(ConcurrentHashMap<String, AtomicInteger> gauges, String key) {
+		AtomicInteger gauge = gauges.get(key);
+		if( gauge == null ){
+			AtomicInteger created = new AtomicInteger();
+			gauge = gauges.putIfAbsent(key, created);
+			if( gauge == null ){
+				gauge = created;
+			}
+		}
+		return gauge;
+	}
+	
+	
+	private static Map<String, Integer> snapshot(ConcurrentHashMap<String, AtomicInteger> gauges) {
+		Map<String, Integer> snapshot = new HashMap<>();
+		for (Map.Entry<String, AtomicInteger> entry : gauges.entrySet()) {
+			int value = entry.getValue().get();
+			if( value != 0 ){
+				snapshot.put(entry.getKey(), value);
+			}
+		}
+		return Collections.unmodifiableMap(snapshot);
+	}
+	
+
+
+	///////////////////////////////////////////////////////////////////////////
+	// METRICS
+	///////////////////////////////////////////////////////////////////////////
+
+	private final WebServiceMetrics metrics = new WebServiceMetrics();
+
+
+	public final void onRequestMeasured(String endpoint, long durationNanos, WebServiceMetrics.Outcome outcome) {
+		metrics.record(endpoint, durationNanos, outcome);
+	}
+
+
+	public WebServiceMetrics getMetrics() {
+		return metrics;
+	}
+
+
+	/**
+	 * Latency and outcome counts of every endpoint requested so far, keyed by "METHOD /path/{id}"
+	 */
+	public Map<String, WebServiceMetrics.EndpointSnapshot> getEndpointSnapshots() {
+		return metrics.snapshot();
+	}
+
 }
@@ -0,0 +1,26 @@
+package com.lfyt.mobile.android.webservice;
+
+import com.google.gson.JsonElement;
+
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okio.BufferedSource;
+
+/**
+ * Compact format a response can be sent in instead of JSON, see {@link WireFormatConverterFactory}.
+ *
+ * Bodies are decoded into the Gson tree, so the same adapters bind them to the response models.
+ */
+public interface WireFormat {
+	
+	/**
+	 * Name of the format in the stats
+	 */
+	String name();
+	
+	MediaType mediaType();
+	
+	JsonElement decode(BufferedSource source) throws IOException;
+	
+}
@@ -0,0 +1,243 @@
+package com.lfyt.mobile.android.webservice;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.Okio;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+/**
+ * Content negotiation between JSON and compact wire formats.
+ *
+ * Requests of the endpoints registered with {@link #negotiate(String)} accept the configured formats
+ * before JSON. Responses in one of them are decoded into the same models through the Gson adapters,
+ * anything else goes to the next converter, so servers without support keep answering JSON.
+ *
+ * Payload size and decode time are kept by format, the decode time includes reading the body
+ * from the network when it is not buffered yet.
+ */
+public class WireFormatConverterFactory extends Converter.Factory {
+	
+	
+	public static final String JSON = "json";
+	
+	
+	private final Gson gson;
+	private final List<WireFormat> formats;
+	private final String accept;
+	
+	private final List<String> negotiatedPaths = new CopyOnWriteArrayList<>();
+	
+	private final ConcurrentHashMap<String, FormatCounter> counters = new ConcurrentHashMap<>();
+	
+	
+	public WireFormatConverterFactory(Gson gson, List<WireFormat> formats) {
+		this.gson = gson;
+		this.formats = new ArrayList<>(formats);
+		
+		//Preferred in the given order, JSON last
+		StringBuilder accept = new StringBuilder();
+		for (WireFormat format : this.formats) {
+			accept.append(format.mediaType()).append(", ");
+		}
+		this.accept = accept.append("application/json;q=0.5").toString();
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// NEGOTIATION
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Accept the wire formats on requests whose path starts with the prefix, "/" for every endpoint
+	 */
+	public WireFormatConverterFactory negotiate(String pathPrefix) {
+		negotiatedPaths.add(pathPrefix);
+		return this;
+	}
+	
+	
+	/**
+	 * Interceptor adding the Accept header, requests with an explicit Accept are left untouched
+	 */
+	public Interceptor newInterceptor() {
+		return new Interceptor() {
+			@Override
+			public Response intercept(Chain chain) throws IOException {
+				Request request = chain.request();
+				if( request.header("Accept") != null || !isNegotiated(request.url().encodedPath()) ){
+					return chain.proceed(request);
+				}
+				return chain.proceed(request.newBuilder().header("Accept", accept).build());
+			}
+		};
+	}
+	
+	
+	private boolean isNegotiated(String path) {
+		for (String prefix : negotiatedPaths) {
+			if( path.startsWith(prefix) ){
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// CONVERTER
+	///////////////////////////////////////////////////////////////////////////
+	
+	@Override
+	public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+		return new NegotiatedConverter<>(
+				gson.getAdapter(TypeToken.get(type)),
+				retrofit.<Object>nextResponseBodyConverter(this, type, annotations)
+		);
+	}
+	
+	
+	private final class NegotiatedConverter<T> implements Converter<ResponseBody, Object> {
+		
+		private final TypeAdapter<T> adapter;
+		private final Converter<ResponseBody, Object> jsonConverter;
+		
+		
+		NegotiatedConverter(TypeAdapter<T> adapter, Converter<ResponseBody, Object> jsonConverter) {
+			this.adapter = adapter;
+			this.jsonConverter = jsonConverter;
+		}
+		
+		
+		@Override
+		public Object convert(ResponseBody value) throws IOException {
+			long startNanos = System.nanoTime();
+			CountingSource source = new CountingSource(value.source());
+			BufferedSource bufferedSource = Okio.buffer(source);
+			
+			WireFormat format = formatOf(value.contentType());
+			try {
+				if( format != null ){
+					return adapter.fromJsonTree(format.decode(bufferedSource));
+				}
+				return jsonConverter.convert(ResponseBody.create(value.contentType(), value.contentLength(), bufferedSource));
+			} finally {
+				value.close();
+				counterOf(format != null ? format.name() : JSON).add(source.count, System.nanoTime() - startNanos);
+			}
+		}
+	}
+	
+	
+	private WireFormat formatOf(MediaType contentType) {
+		if( contentType == null ){
+			return null;
+		}
+		for (WireFormat format : formats) {
+			MediaType mediaType = format.mediaType();
+			if( mediaType.type().equals(contentType.type()) && mediaType.subtype().equals(contentType.subtype()) ){
+				return format;
+			}
+		}
+		return null;
+	}
+	
+	
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// STATS
+	///////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Responses, payload size and decode time by format name, JSON included
+	 */
+	public Map<String, FormatStats> getStats() {
+		Map<String, FormatStats> stats = new HashMap<>();
+		for (Map.Entry<String, FormatCounter> entry : counters.entrySet()) {
+			FormatCounter counter = entry.getValue();
+			stats.put(entry.getKey(), new FormatStats(counter.responses.get(), counter.bytes.get(), counter.decodeNanos.get()));
+		}
+		return Collections.unmodifiableMap(stats);
+	}
+	
+	
+	private FormatCounter counterOf(String format) {
+		FormatCounter counter = counters.get(format);
+		if( counter == null ){
+			FormatCounter created = new FormatCounter();
+			counter = counters.putIfAbsent(format, created);
+			if( counter == null ){
+				counter = created;
+			}
+		}
+		return counter;
+	}
+	
+	
+	private static final class FormatCounter {
+		
+		final AtomicLong responses = new AtomicLong();
+		final AtomicLong bytes = new AtomicLong();
+		final AtomicLong decodeNanos = new AtomicLong();
+		
+		void add(long byteCount, long nanos) {
+			responses.incrementAndGet();
+			bytes.addAndGet(byteCount);
+			decodeNanos.addAndGet(nanos);
+		}
+	}
+	
+	
+	public static final class FormatStats {
+		
+		public final long responses;
+		public final long bytes;
+		public final long decodeNanos;
+		
+		FormatStats(long responses, long bytes, long decodeNanos) {
+			this.responses = responses;
+			this.bytes = bytes;
+			this.decodeNanos = decodeNanos;
+		}
+		
+		public long getMeanBytes() {
+			return responses == 0 ? 0 : bytes / responses;
+		}
+		
+		public long getMeanDecodeMicros() {
+			return responses == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(decodeNanos / responses);
+		}
+		
+		@Override
+		public String toString() {
+			return "responses=" + responses + " meanBytes=" + getMeanBytes() + " meanDecode=" + getMeanDecodeMicros() + "us";
+		}
+	}
+	
+}
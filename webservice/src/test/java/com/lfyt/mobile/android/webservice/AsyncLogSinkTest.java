@@ -0,0 +1,186 @@
+package com.lfyt.mobile.android.webservice;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncLogSinkTest {
+	
+	@Test
+	public void recordsAreWrittenInOrder() {
+		AsyncLogSink sink = new AsyncLogSink(1024, 8, 10);
+		Lines lines = new Lines();
+		
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(sink.offer(lines, Collections.singletonList("line " + i)));
+		}
+		assertTrue(sink.flush(5000));
+		sink.close();
+		
+		assertEquals(0, sink.getDroppedRecords());
+		assertEquals(1000, lines.size());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals("line " + i, lines.get(i));
+		}
+	}
+	
+	@Test
+	public void linesOfARecordStayTogether() {
+		AsyncLogSink sink = new AsyncLogSink(16, 4, 10);
+		Lines lines = new Lines();
+		
+		sink.offer(lines, Arrays.asList("--> GET", "--> END GET"));
+		sink.offer(lines, Arrays.asList("<-- 200", "<-- END HTTP"));
+		assertTrue(sink.flush(5000));
+		sink.close();
+		
+		assertEquals("[--> GET, --> END GET, <-- 200, <-- END HTTP]", lines.snapshot().toString());
+	}
+	
+	@Test
+	public void fullRingDropsAndCountsNewRecords() throws InterruptedException {
+		AsyncLogSink sink = new AsyncLogSink(4, 1, 10);
+		final CountDownLatch writing = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Lines lines = new Lines() {
+			@Override
+			public void log(String message) {
+				if( message.equals("blocker") ){
+					writing.countDown();
+					await(release);
+				}
+				super.log(message);
+			}
+		};
+		
+		//The thread is stuck writing the first record while the ring fills
+		sink.offer(lines, Collections.singletonList("blocker"));
+		assertTrue(writing.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i < 4; i++) {
+			assertTrue(sink.offer(lines, Collections.singletonList("kept " + i)));
+		}
+		assertFalse(sink.offer(lines, Collections.singletonList("dropped 1")));
+		assertFalse(sink.offer(lines, Collections.singletonList("dropped 2")));
+		assertEquals(2, sink.getDroppedRecords());
+		
+		release.countDown();
+		assertTrue(sink.flush(5000));
+		sink.close();
+		
+		assertEquals("[blocker, --- 2 http log records dropped ---, kept 0, kept 1, kept 2, kept 3]", lines.snapshot().toString());
+	}
+	
+	@Test
+	public void flushDoesNotWaitForTheBatch() {
+		AsyncLogSink sink = new AsyncLogSink(64, 64, TimeUnit.MINUTES.toMillis(10));
+		Lines lines = new Lines();
+		
+		for (int i = 0; i < 3; i++) {
+			sink.offer(lines, Collections.singletonList("line " + i));
+			assertTrue(sink.flush(5000));
+			assertEquals(i + 1, lines.size());
+		}
+		sink.close();
+	}
+	
+	@Test
+	public void flushWithNothingQueuedReturns() {
+		AsyncLogSink sink = new AsyncLogSink();
+		assertTrue(sink.flush(0));
+		sink.close();
+	}
+	
+	@Test
+	public void emptySinkSleepsWithoutTimeout() throws InterruptedException {
+		AsyncLogSink sink = new AsyncLogSink(64, 64, 10);
+		Lines lines = new Lines();
+		
+		assertTrue(awaitState(sink.thread, Thread.State.WAITING));
+		
+		//Woken by the record, then back to sleep once the batch wait is over
+		sink.offer(lines, Collections.singletonList("line"));
+		assertTrue(sink.flush(5000));
+		assertTrue(awaitState(sink.thread, Thread.State.WAITING));
+		assertEquals(1, lines.size());
+		sink.close();
+	}
+	
+	@Test
+	public void closeWritesTheQueueAndStopsTheThread() {
+		AsyncLogSink sink = new AsyncLogSink(64, 64, TimeUnit.MINUTES.toMillis(10));
+		Lines lines = new Lines();
+		
+		for (int i = 0; i < 10; i++) {
+			sink.offer(lines, Collections.singletonList("line " + i));
+		}
+		sink.close();
+		
+		assertEquals(10, lines.size());
+		assertFalse(sink.thread.isAlive());
+		assertFalse(sink.offer(lines, Collections.singletonList("late")));
+		assertEquals(10, lines.size());
+	}
+	
+	
+	
+	
+	private static boolean awaitState(Thread thread, Thread.State state) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while( thread.getState() != state ){
+			if( System.nanoTime() > deadline ){
+				return false;
+			}
+			Thread.sleep(5);
+		}
+		return true;
+	}
+	
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	
+	private static class Lines implements HttpLogInterceptor.Logger {
+		
+		private final List<String> lines = new ArrayList<>();
+		
+		@Override
+		public void log(String message) {
+			synchronized (lines) {
+				lines.add(message);
+			}
+		}
+		
+		int size() {
+			synchronized (lines) {
+				return lines.size();
+			}
+		}
+		
+		String get(int index) {
+			synchronized (lines) {
+				return lines.get(index);
+			}
+		}
+		
+		List<String> snapshot() {
+			synchronized (lines) {
+				return new ArrayList<>(lines);
+			}
+		}
+	}
+	
+}
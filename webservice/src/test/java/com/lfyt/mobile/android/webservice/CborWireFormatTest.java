@@ -0,0 +1,140 @@
+package com.lfyt.mobile.android.webservice;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.ProtocolException;
+
+import okio.Buffer;
+import okio.ByteString;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Examples of RFC 8949 appendix A
+ */
+public class CborWireFormatTest {
+	
+	private final CborWireFormat format = new CborWireFormat();
+	
+	
+	@Test
+	public void unsignedIntegers() throws IOException {
+		assertEquals(0, decode("00").getAsLong());
+		assertEquals(23, decode("17").getAsLong());
+		assertEquals(24, decode("1818").getAsLong());
+		assertEquals(1000, decode("1903e8").getAsLong());
+		assertEquals(1000000, decode("1a000f4240").getAsLong());
+		assertEquals(1000000000000L, decode("1b000000e8d4a51000").getAsLong());
+		assertEquals(new BigInteger("18446744073709551615"), decode("1bffffffffffffffff").getAsBigInteger());
+	}
+	
+	@Test
+	public void negativeIntegers() throws IOException {
+		assertEquals(-1, decode("20").getAsLong());
+		assertEquals(-100, decode("3863").getAsLong());
+		assertEquals(-1000, decode("3903e7").getAsLong());
+		assertEquals(new BigInteger("-18446744073709551616"), decode("3bffffffffffffffff").getAsBigInteger());
+	}
+	
+	@Test
+	public void floats() throws IOException {
+		assertEquals(0.0, decode("f90000").getAsDouble(), 0);
+		assertEquals(1.5, decode("f93e00").getAsDouble(), 0);
+		assertEquals(65504.0, decode("f97bff").getAsDouble(), 0);
+		assertEquals(5.960464477539063e-8, decode("f90001").getAsDouble(), 0);
+		assertEquals(-4.0, decode("f9c400").getAsDouble(), 0);
+		assertEquals(Double.POSITIVE_INFINITY, decode("f97c00").getAsDouble(), 0);
+		assertTrue(Double.isNaN(decode("f97e00").getAsDouble()));
+		assertEquals(100000.0, decode("fa47c35000").getAsDouble(), 0);
+		assertEquals(1.1, decode("fb3ff199999999999a").getAsDouble(), 0);
+	}
+	
+	@Test
+	public void simpleValues() throws IOException {
+		assertEquals(false, decode("f4").getAsBoolean());
+		assertEquals(true, decode("f5").getAsBoolean());
+		assertEquals(JsonNull.INSTANCE, decode("f6"));
+		assertEquals(JsonNull.INSTANCE, decode("f7"));
+	}
+	
+	@Test
+	public void strings() throws IOException {
+		assertEquals("", decode("60").getAsString());
+		assertEquals("IETF", decode("6449455446").getAsString());
+		assertEquals("\u00fc", decode("62c3bc").getAsString());
+		assertEquals("AQIDBA==", decode("4401020304").getAsString());
+		assertEquals("streaming", decode("7f657374726561646d696e67ff").getAsString());
+		assertEquals("AQIDBAU=", decode("5f42010243030405ff").getAsString());
+	}
+	
+	@Test
+	public void arraysAndMaps() throws IOException {
+		assertEquals("[]", decode("80").toString());
+		assertEquals("[1,[2,3],[4,5]]", decode("8301820203820405").toString());
+		assertEquals("{\"a\":1,\"b\":[2,3]}", decode("a26161016162820203").toString());
+		assertEquals("{\"1\":2,\"3\":4}", decode("a201020304").toString());
+	}
+	
+	@Test
+	public void indefiniteArraysAndMaps() throws IOException {
+		assertEquals("[]", decode("9fff").toString());
+		assertEquals("[1,[2,3],[4,5]]", decode("9f018202039f0405ffff").toString());
+		assertEquals("{\"a\":1,\"b\":[2,3]}", decode("bf61610161629f0203ffff").toString());
+		assertEquals("[\"a\",{\"b\":\"c\"}]", decode("826161bf61626163ff").toString());
+	}
+	
+	@Test
+	public void tagsAreIgnored() throws IOException {
+		assertEquals("2013-03-21T20:04:00Z", decode("c074323031332d30332d32315432303a30343a30305a").getAsString());
+		assertEquals(1363896240, decode("c11a514b67b0").getAsLong());
+	}
+	
+	@Test
+	public void indefiniteLengthIsOnlyForStringsArraysAndMaps() throws IOException {
+		assertMalformed("1f");
+		assertMalformed("3f");
+		assertMalformed("df01");
+		assertMalformed("5f5f4101ffff");
+	}
+	
+	@Test
+	public void malformedItems() throws IOException {
+		assertMalformed("1c");
+		assertMalformed("ff");
+		assertMalformed("5f6161ff");
+		assertMalformed("a1806101");
+		assertMalformed("9bffffffffffffffff");
+	}
+	
+	@Test
+	public void deepNestingIsRejected() throws IOException {
+		StringBuilder hex = new StringBuilder();
+		for (int i = 0; i < 300; i++) {
+			hex.append("81");
+		}
+		assertMalformed(hex.append("00").toString());
+	}
+	
+	
+	
+	
+	private JsonElement decode(String hex) throws IOException {
+		return format.decode(new Buffer().write(ByteString.decodeHex(hex)));
+	}
+	
+	private void assertMalformed(String hex) throws IOException {
+		try {
+			decode(hex);
+			fail("Decoded malformed CBOR " + hex);
+		} catch (ProtocolException expected) {
+		}
+	}
+	
+}
@@ -0,0 +1,252 @@
+package com.lfyt.mobile.android.webservice;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+	
+	private static final String HOST = "api.example.com";
+	private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+	private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(200);
+	
+	
+	//Window of 4 calls, opens at half of them failing or all of them slow
+	private static CircuitBreaker newCircuitBreaker(long openDurationMs, int probeCalls) {
+		return new CircuitBreaker(4, 4, 0.5f, 1f, 100, openDurationMs, probeCalls);
+	}
+	
+	private static void call(CircuitBreaker circuitBreaker, WebServiceMetrics.Outcome outcome, long durationNanos) {
+		CircuitBreaker.Permit permit = circuitBreaker.tryAcquire(HOST);
+		assertNotNull(permit);
+		circuitBreaker.record(HOST, permit, outcome, durationNanos);
+	}
+	
+	private static CircuitBreaker.Connectivity connected(final boolean connected) {
+		return new CircuitBreaker.Connectivity() {
+			@Override
+			public boolean isConnected() {
+				return connected;
+			}
+		};
+	}
+	
+	private static void open(CircuitBreaker circuitBreaker) {
+		for (int i = 0; i < 4; i++) {
+			call(circuitBreaker, WebServiceMetrics.Outcome.SERVER_ERROR, FAST);
+		}
+	}
+	
+	
+	@Test
+	public void opensWhenFailureRateIsReached() {
+		CircuitBreaker circuitBreaker = newCircuitBreaker(10000, 1);
+		call(circuitBreaker, WebServiceMetrics.Outcome.SUCCESS, FAST);
+		call(circuitBreaker, WebServiceMetrics.Outcome.SERVER_ERROR, FAST);
+		call(circuitBreaker, WebServiceMetrics.Outcome.CLIENT_ERROR, FAST);
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState(HOST));
+		
+		call(circuitBreaker, WebServiceMetrics.Outcome.TIMEOUT, FAST);
+		assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState(HOST));
+		assertNull(circuitBreaker.tryAcquire(HOST));
+		assertEquals(1, circuitBreaker.getRejectedCount());
+	}
+	
+	@Test
+	public void opensWhenSlowCallRateIsReached() {
+		CircuitBreaker circuitBreaker = newCircuitBreaker(10000, 1);
+		for (int i = 0; i < 4; i++) {
+			call(circuitBreaker, WebServiceMetrics.Outcome.SUCCESS, SLOW);
+		}
+		assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState(HOST));
+	}
+	
+	@Test
+	public void staysClosedBeforeMinimumCalls() {
+		CircuitBreaker circuitBreaker = newCircuitBreaker(10000, 1);
+		for (int i = 0; i < 3; i++) {
+			call(circuitBreaker, WebServiceMetrics.Outcome.SERVER_ERROR, FAST);
+		}
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState(HOST));
+	}
+	
+	@Test
+	public void neutralOutcomesAreNotCountedInTheWindow() {
+		CircuitBreaker circuitBreaker = newCircuitBreaker(10000, 1).setConnectivity(connected(false));
+		call(circuitBreaker, WebServiceMetrics.Outcome.SERVER_ERROR, FAST);
+		call(circuitBreaker, WebServiceMetrics.Outcome.SERVER_ERROR, FAST);
+		for (int i = 0; i < 10; i++) {
+			call(circuitBreaker, WebServiceMetrics.Outcome.NO_INTERNET, FAST);
+			call(circuitBreaker, WebServiceMetrics.Outcome.OTHER, FAST);
+		}
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState(HOST));
+		
+		call(circuitBreaker, WebServiceMetrics.Outcome.SUCCESS, FAST);
+		call(circuitBreaker, WebServiceMetrics.Outcome.SUCCESS, FAST);
+		assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState(HOST));
+	}
+	
+	@Test
+	public void connectFailuresWhileOnlineAreFailures() {
+		CircuitBreaker circuitBreaker = newCircuitBreaker(10000, 1).setConnectivity(connected(true));
+		for (int i = 0; i < 4; i++) {
+			call(circuitBreaker, WebServiceMetrics.Outcome.NO_INTERNET, FAST);
+		}
+		assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState(HOST));
+	}
+	
+	@Test
+	public void responseOfAnotherHostMeansOnline() {
+		CircuitBreaker circuitBreaker = newCircuitBreaker(10000, 1);
+		
+		//Nothing answered yet, the device may be offline
+		call(circuitBreaker, WebServiceMetrics.Outcome.NO_INTERNET, FAST);
+		assertFalse(circuitBreaker.isOnline());
+		
+		CircuitBreaker.Permit permit = circuitBreaker.tryAcquire("cdn.example.com");
+		circuitBreaker.record("cdn.example.com", permit, WebServiceMetrics.Outcome.SUCCESS, FAST);
+		assertTrue(circuitBreaker.isOnline());
+		
+		call(circuitBreaker, WebServiceMetrics.Outcome.SUCCESS, FAST);
+		call(circuitBreaker, WebServiceMetrics.Outcome.NO_INTERNET, FAST);
+		call(circuitBreaker, WebServiceMetrics.Outcome.SUCCESS, FAST);
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState(HOST));
+		call(circuitBreaker, WebServiceMetrics.Outcome.NO_INTERNET, FAST);
+		assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState(HOST));
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState("cdn.example.com"));
+	}
+	
+	@Test
+	public void connectivityOverridesTheResponses() {
+		CircuitBreaker circuitBreaker = newCircuitBreaker(10000, 1);
+		call(circuitBreaker, WebServiceMetrics.Outcome.SUCCESS, FAST);
+		assertTrue(circuitBreaker.isOnline());
+		
+		circuitBreaker.setConnectivity(connected(false));
+		assertFalse(circuitBreaker.isOnline());
+		for (int i = 0; i < 10; i++) {
+			call(circuitBreaker, WebServiceMetrics.Outcome.NO_INTERNET, FAST);
+		}
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState(HOST));
+	}
+	
+	@Test
+	public void closesWhenEveryProbeSucceeds() {
+		CircuitBreaker circuitBreaker = newCircuitBreaker(0, 2);
+		open(circuitBreaker);
+		assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState(HOST));
+		
+		CircuitBreaker.Permit first = circuitBreaker.tryAcquire(HOST);
+		CircuitBreaker.Permit second = circuitBreaker.tryAcquire(HOST);
+		assertTrue(first.isProbe());
+		assertTrue(second.isProbe());
+		assertNull(circuitBreaker.tryAcquire(HOST));
+		
+		circuitBreaker.record(HOST, first, WebServiceMetrics.Outcome.SUCCESS, FAST);
+		assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState(HOST));
+		circuitBreaker.record(HOST, second, WebServiceMetrics.Outcome.SUCCESS, FAST);
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState(HOST));
+		assertFalse(circuitBreaker.tryAcquire(HOST).isProbe());
+	}
+	
+	@Test
+	public void failedProbeOpensAgain() {
+		CircuitBreaker circuitBreaker = newCircuitBreaker(0, 2);
+		open(circuitBreaker);
+		
+		CircuitBreaker.Permit failing = circuitBreaker.tryAcquire(HOST);
+		assertNotNull(circuitBreaker.tryAcquire(HOST));
+		circuitBreaker.record(HOST, failing, WebServiceMetrics.Outcome.SERVER_ERROR, FAST);
+		
+		//New half open period, both probes are available again
+		assertTrue(circuitBreaker.tryAcquire(HOST).isProbe());
+		assertTrue(circuitBreaker.tryAcquire(HOST).isProbe());
+		assertNull(circuitBreaker.tryAcquire(HOST));
+	}
+	
+	@Test
+	public void slowProbeOpensAgain() {
+		CircuitBreaker circuitBreaker = newCircuitBreaker(0, 1);
+		open(circuitBreaker);
+		
+		CircuitBreaker.Permit probe = circuitBreaker.tryAcquire(HOST);
+		circuitBreaker.record(HOST, probe, WebServiceMetrics.Outcome.SUCCESS, SLOW);
+		
+		//Opened again, the next call is a probe of a new half open period
+		CircuitBreaker.Permit next = circuitBreaker.tryAcquire(HOST);
+		assertTrue(next.isProbe());
+		circuitBreaker.record(HOST, next, WebServiceMetrics.Outcome.SUCCESS, FAST);
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState(HOST));
+	}
+	
+	@Test
+	public void neutralProbeGivesBackItsSlotWithoutClosing() {
+		CircuitBreaker circuitBreaker = newCircuitBreaker(0, 1);
+		open(circuitBreaker);
+		
+		CircuitBreaker.Permit probe = circuitBreaker.tryAcquire(HOST);
+		assertNull(circuitBreaker.tryAcquire(HOST));
+		
+		circuitBreaker.record(HOST, probe, WebServiceMetrics.Outcome.OTHER, FAST);
+		assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState(HOST));
+		
+		CircuitBreaker.Permit next = circuitBreaker.tryAcquire(HOST);
+		assertNotNull(next);
+		circuitBreaker.record(HOST, next, WebServiceMetrics.Outcome.SUCCESS, FAST);
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState(HOST));
+	}
+	
+	@Test
+	public void releasedProbeGivesBackItsSlot() {
+		CircuitBreaker circuitBreaker = newCircuitBreaker(0, 1);
+		open(circuitBreaker);
+		
+		CircuitBreaker.Permit probe = circuitBreaker.tryAcquire(HOST);
+		circuitBreaker.release(HOST, probe);
+		assertNotNull(circuitBreaker.tryAcquire(HOST));
+	}
+	
+	@Test
+	public void callsAdmittedBeforeOpeningAreIgnoredWhileHalfOpen() {
+		CircuitBreaker circuitBreaker = newCircuitBreaker(0, 1);
+		CircuitBreaker.Permit early = circuitBreaker.tryAcquire(HOST);
+		assertFalse(early.isProbe());
+		open(circuitBreaker);
+		
+		CircuitBreaker.Permit probe = circuitBreaker.tryAcquire(HOST);
+		assertTrue(probe.isProbe());
+		
+		//Neither frees the probe slot nor counts as a successful probe
+		circuitBreaker.record(HOST, early, WebServiceMetrics.Outcome.SUCCESS, FAST);
+		assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState(HOST));
+		assertNull(circuitBreaker.tryAcquire(HOST));
+		
+		circuitBreaker.record(HOST, probe, WebServiceMetrics.Outcome.SUCCESS, FAST);
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState(HOST));
+	}
+	
+	@Test
+	public void probesOfAPreviousHalfOpenPeriodAreIgnored() {
+		CircuitBreaker circuitBreaker = newCircuitBreaker(0, 2);
+		open(circuitBreaker);
+		
+		CircuitBreaker.Permit failing = circuitBreaker.tryAcquire(HOST);
+		CircuitBreaker.Permit stale = circuitBreaker.tryAcquire(HOST);
+		circuitBreaker.record(HOST, failing, WebServiceMetrics.Outcome.SERVER_ERROR, FAST);
+		
+		CircuitBreaker.Permit probe = circuitBreaker.tryAcquire(HOST);
+		circuitBreaker.record(HOST, stale, WebServiceMetrics.Outcome.SUCCESS, FAST);
+		circuitBreaker.record(HOST, probe, WebServiceMetrics.Outcome.SUCCESS, FAST);
+		assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState(HOST));
+		
+		circuitBreaker.record(HOST, circuitBreaker.tryAcquire(HOST), WebServiceMetrics.Outcome.SUCCESS, FAST);
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState(HOST));
+	}
+	
+}
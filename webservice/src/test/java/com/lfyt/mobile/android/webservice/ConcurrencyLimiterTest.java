@@ -0,0 +1,224 @@
+package com.lfyt.mobile.android.webservice;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrencyLimiterTest {
+	
+	private static final String HOST = "api.example.com";
+	private static final String FAST_ENDPOINT = "GET /items";
+	private static final String SLOW_ENDPOINT = "GET /reports/{id}";
+	private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+	
+	
+	private static final class RecordingTask implements ConcurrencyLimiter.Task {
+		
+		volatile boolean started;
+		volatile boolean rejected;
+		
+		@Override
+		public void start() {
+			started = true;
+		}
+		
+		@Override
+		public void reject() {
+			rejected = true;
+		}
+	}
+	
+	
+	private static List<RecordingTask> submit(ConcurrencyLimiter limiter, RequestPriority priority, int count) {
+		List<RecordingTask> tasks = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			RecordingTask task = new RecordingTask();
+			limiter.submit(HOST, priority, task);
+			tasks.add(task);
+		}
+		return tasks;
+	}
+	
+	private static int started(List<RecordingTask> tasks) {
+		int started = 0;
+		for (RecordingTask task : tasks) {
+			if( task.started ) started++;
+		}
+		return started;
+	}
+	
+	private static void release(ConcurrencyLimiter limiter, int count) {
+		for (int i = 0; i < count; i++) {
+			limiter.release(HOST, FAST_ENDPOINT, RTT, false);
+		}
+	}
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// LIMIT
+	///////////////////////////////////////////////////////////////////////////
+	
+	@Test
+	public void queuesOverTheLimit() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 2, 8, 0);
+		List<RecordingTask> tasks = submit(limiter, RequestPriority.CRITICAL, 5);
+		assertEquals(4, started(tasks));
+		
+		release(limiter, 1);
+		assertEquals(5, started(tasks));
+	}
+	
+	@Test
+	public void increasesWhileTheLimitIsUsed() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 2, 8, 0);
+		submit(limiter, RequestPriority.CRITICAL, 4);
+		
+		//Keep 4 calls in flight, every release grows the limit by 1/limit
+		for (int i = 0; i < 5; i++) {
+			release(limiter, 1);
+			submit(limiter, RequestPriority.CRITICAL, 1);
+		}
+		assertEquals(5, limiter.getLimit(HOST));
+	}
+	
+	@Test
+	public void keepsTheLimitWhenItIsNotUsed() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 2, 16, 0);
+		for (int i = 0; i < 20; i++) {
+			submit(limiter, RequestPriority.CRITICAL, 1);
+			release(limiter, 1);
+		}
+		assertEquals(8, limiter.getLimit(HOST));
+	}
+	
+	@Test
+	public void neverGrowsOverTheMaximum() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 2, 5, 0);
+		submit(limiter, RequestPriority.CRITICAL, 4);
+		for (int i = 0; i < 100; i++) {
+			release(limiter, 1);
+			submit(limiter, RequestPriority.CRITICAL, 1);
+		}
+		assertEquals(5, limiter.getLimit(HOST));
+	}
+	
+	@Test
+	public void decreasesOnOverload() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 2, 20, 0);
+		submit(limiter, RequestPriority.CRITICAL, 1);
+		limiter.release(HOST, FAST_ENDPOINT, -1, true);
+		assertEquals(9, limiter.getLimit(HOST));
+	}
+	
+	@Test
+	public void neverDecreasesUnderTheMinimum() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 3, 20, 0);
+		for (int i = 0; i < 50; i++) {
+			submit(limiter, RequestPriority.CRITICAL, 1);
+			limiter.release(HOST, FAST_ENDPOINT, -1, true);
+		}
+		assertEquals(3, limiter.getLimit(HOST));
+	}
+	
+	@Test
+	public void decreasesWhenTheRttOfAnEndpointGrows() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 2, 20, 0);
+		submit(limiter, RequestPriority.CRITICAL, 2);
+		limiter.release(HOST, FAST_ENDPOINT, RTT, false);
+		limiter.release(HOST, FAST_ENDPOINT, 3 * RTT, false);
+		assertEquals(9, limiter.getLimit(HOST));
+	}
+	
+	@Test
+	public void slowEndpointDoesNotDecreaseTheLimit() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 2, 20, 0);
+		for (int i = 0; i < 20; i++) {
+			submit(limiter, RequestPriority.CRITICAL, 2);
+			limiter.release(HOST, FAST_ENDPOINT, RTT, false);
+			limiter.release(HOST, SLOW_ENDPOINT, 50 * RTT, false);
+		}
+		assertEquals(10, limiter.getLimit(HOST));
+	}
+	
+	@Test
+	public void callsNotMeasuredKeepTheLimit() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 2, 20, 0);
+		submit(limiter, RequestPriority.CRITICAL, 10);
+		for (int i = 0; i < 10; i++) {
+			limiter.release(HOST, FAST_ENDPOINT, -1, false);
+		}
+		assertEquals(10, limiter.getLimit(HOST));
+	}
+	
+	@Test
+	public void rejectsAfterTheQueueTimeout() throws InterruptedException {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 2, 2, 50);
+		List<RecordingTask> tasks = submit(limiter, RequestPriority.CRITICAL, 3);
+		assertFalse(tasks.get(2).started);
+		
+		Thread.sleep(500);
+		assertTrue(tasks.get(2).rejected);
+		assertEquals(1, limiter.getRejectedCount());
+		
+		//Rejected tasks are not started when a slot is given back
+		release(limiter, 1);
+		assertFalse(tasks.get(2).started);
+	}
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	// PRIORITY
+	///////////////////////////////////////////////////////////////////////////
+	
+	@Test
+	public void lowerPrioritiesOnlyUseTheirShareOfTheLimit() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 2, 20, 0);
+		
+		assertEquals(5, started(submit(limiter, RequestPriority.PREFETCH, 6)));
+		assertEquals(4, started(submit(limiter, RequestPriority.NORMAL, 5)));
+		assertEquals(1, started(submit(limiter, RequestPriority.CRITICAL, 2)));
+	}
+	
+	@Test
+	public void higherPriorityStartsFirst() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 2, 20, 0);
+		submit(limiter, RequestPriority.CRITICAL, 10);
+		
+		RecordingTask prefetch = submit(limiter, RequestPriority.PREFETCH, 1).get(0);
+		RecordingTask normal = submit(limiter, RequestPriority.NORMAL, 1).get(0);
+		RecordingTask critical = submit(limiter, RequestPriority.CRITICAL, 1).get(0);
+		
+		release(limiter, 1);
+		assertTrue(critical.started);
+		assertFalse(normal.started);
+		
+		//Normal requests only start under 9 in flight
+		release(limiter, 1);
+		assertFalse(normal.started);
+		release(limiter, 1);
+		assertTrue(normal.started);
+		assertFalse(prefetch.started);
+	}
+	
+	@Test
+	public void queuedRequestsAgeToAHigherPriority() throws InterruptedException {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 2, 20, 0, 50);
+		submit(limiter, RequestPriority.CRITICAL, 10);
+		
+		RecordingTask prefetch = submit(limiter, RequestPriority.PREFETCH, 1).get(0);
+		Thread.sleep(120);
+		RecordingTask normal = submit(limiter, RequestPriority.NORMAL, 1).get(0);
+		
+		//Waited two aging intervals, the prefetch request is now critical
+		release(limiter, 1);
+		assertTrue(prefetch.started);
+		assertFalse(normal.started);
+	}
+	
+}
@@ -0,0 +1,146 @@
+package com.lfyt.mobile.android.webservice;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionPhaseMetricsTest {
+	
+	private MockWebServer server;
+	private final ConnectionPhaseMetrics metrics = new ConnectionPhaseMetrics();
+	private final List<String> descriptions = new ArrayList<>();
+	
+	
+	@Before
+	public void setUp() throws IOException {
+		server = new MockWebServer();
+		server.start();
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		server.shutdown();
+	}
+	
+	
+	@Test
+	public void connectionsAreCountedAsNewOrPooled() throws IOException {
+		OkHttpClient client = client(null);
+		for (int i = 0; i < 3; i++) {
+			server.enqueue(new MockResponse().setBody("ok"));
+			get(client);
+		}
+		
+		ConnectionPhaseMetrics.HostSnapshot host = metrics.snapshot().get(server.getHostName());
+		assertEquals(1, host.getNewConnections());
+		assertEquals(2, host.getPooledConnections());
+		assertEquals(2f / 3, host.getReuseRate(), 0.001f);
+		assertEquals(1, host.getLatency(ConnectionPhaseMetrics.Phase.CONNECT).getCount());
+		assertEquals(0, host.getLatency(ConnectionPhaseMetrics.Phase.TLS).getCount());
+		assertEquals(3, host.getLatency(ConnectionPhaseMetrics.Phase.TIME_TO_FIRST_BYTE).getCount());
+		assertEquals(3, host.getLatency(ConnectionPhaseMetrics.Phase.CALL).getCount());
+	}
+	
+	@Test
+	public void describeTellsThePhasesOfTheCallInFlight() throws IOException {
+		OkHttpClient client = client(null);
+		server.enqueue(new MockResponse().setBody("ok"));
+		server.enqueue(new MockResponse().setBody("ok"));
+		
+		Call first = get(client);
+		get(client);
+		
+		assertTrue(descriptions.get(0), descriptions.get(0).matches(".*connect=\\d+ms write=\\d+ms ttfb=\\d+ms new connection"));
+		assertTrue(descriptions.get(1), descriptions.get(1).matches("write=\\d+ms ttfb=\\d+ms pooled connection"));
+		assertEquals("", metrics.describe(first));
+	}
+	
+	@Test
+	public void callsInFlightRecordAfterReset() throws IOException {
+		OkHttpClient client = client(new Interceptor() {
+			@Override
+			public Response intercept(Chain chain) throws IOException {
+				metrics.reset();
+				return chain.proceed(chain.request());
+			}
+		});
+		server.enqueue(new MockResponse().setBody("ok"));
+		
+		get(client);
+		
+		ConnectionPhaseMetrics.HostSnapshot host = metrics.snapshot().get(server.getHostName());
+		assertEquals(1, host.getNewConnections());
+		assertEquals(1, host.getLatency(ConnectionPhaseMetrics.Phase.CALL).getCount());
+	}
+	
+	@Test
+	public void connectStopsWhereTheHandshakeStarts() throws InterruptedException {
+		Call call = new OkHttpClient().newCall(new Request.Builder().url("https://api.example.com/").build());
+		EventListener listener = metrics.create(call);
+		InetSocketAddress address = InetSocketAddress.createUnresolved("api.example.com", 443);
+		
+		listener.callStart(call);
+		listener.connectStart(call, address, Proxy.NO_PROXY);
+		listener.secureConnectStart(call);
+		Thread.sleep(50);
+		listener.secureConnectEnd(call, null);
+		listener.connectEnd(call, address, Proxy.NO_PROXY, Protocol.HTTP_2);
+		
+		ConnectionPhaseMetrics.HostSnapshot host = metrics.snapshot().get("api.example.com");
+		assertEquals(1, host.getLatency(ConnectionPhaseMetrics.Phase.CONNECT).getCount());
+		assertEquals(1, host.getLatency(ConnectionPhaseMetrics.Phase.TLS).getCount());
+		assertTrue(host.getLatency(ConnectionPhaseMetrics.Phase.CONNECT).getMax() < TimeUnit.MILLISECONDS.toMicros(50));
+		assertTrue(host.getLatency(ConnectionPhaseMetrics.Phase.TLS).getMax() >= TimeUnit.MILLISECONDS.toMicros(50));
+		assertTrue(metrics.describe(call), metrics.describe(call).matches("connect=\\d+ms tls=\\d+ms"));
+	}
+	
+	
+	
+	
+	/**
+	 * Client recording the description of each call once its response headers are read
+	 */
+	private OkHttpClient client(Interceptor interceptor) {
+		OkHttpClient.Builder builder = new OkHttpClient.Builder().eventListenerFactory(metrics);
+		if( interceptor != null ){
+			builder.addInterceptor(interceptor);
+		}
+		return builder.addInterceptor(new Interceptor() {
+			@Override
+			public Response intercept(Chain chain) throws IOException {
+				Response response = chain.proceed(chain.request());
+				descriptions.add(metrics.describe(chain.call()));
+				return response;
+			}
+		}).build();
+	}
+	
+	private Call get(OkHttpClient client) throws IOException {
+		Call call = client.newCall(new Request.Builder().url(server.url("/")).build());
+		try (Response response = call.execute()) {
+			assertEquals("ok", response.body().string());
+		}
+		return call;
+	}
+	
+}
@@ -0,0 +1,200 @@
+package com.lfyt.mobile.android.webservice;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Remembered conversions must give the same dates as the SimpleDateFormat of Gson
+ */
+public class DateTypeAdapterTest {
+	
+	//DST at midnight, half hour DST, DST over the whole year and plain ones
+	private static final String[] ZONES = {
+			"UTC", "Europe/Madrid", "America/New_York", "America/Sao_Paulo", "America/Havana",
+			"America/Santiago", "Asia/Tehran", "Australia/Lord_Howe", "Pacific/Apia", "Europe/Dublin"
+	};
+	
+	private TimeZone defaultZone;
+	
+	
+	@Before
+	public void setUp() {
+		defaultZone = TimeZone.getDefault();
+	}
+	
+	@After
+	public void tearDown() {
+		TimeZone.setDefault(defaultZone);
+	}
+	
+	
+	@Test
+	public void everyDayMatchesTheFallback() throws IOException, ParseException {
+		for (String zone : ZONES) {
+			TimeZone.setDefault(TimeZone.getTimeZone(zone));
+			DateTypeAdapter adapter = new DateTypeAdapter();
+			SimpleDateFormat fallback = fallback();
+			
+			Calendar calendar = Calendar.getInstance();
+			calendar.clear();
+			calendar.set(1583, Calendar.JANUARY, 1);
+			while( calendar.get(Calendar.YEAR) < 2101 ){
+				String value = fallback.format(calendar.getTime());
+				Date expected = fallback.parse(value);
+				assertEquals(zone + " " + value, expected, read(adapter, value));
+				assertEquals(zone + " " + value, expected, read(adapter, value));
+				
+				long midnight = expected.getTime();
+				assertEquals(zone + " " + value, value, adapter.format(midnight));
+				assertEquals(zone + " " + value, value, adapter.format(midnight));
+				assertEquals(zone + " " + value, value, adapter.format(midnight + 12 * 3600000));
+				calendar.add(Calendar.DAY_OF_MONTH, 1);
+			}
+		}
+	}
+	
+	@Test
+	public void bothDstTransitionsMatchTheFallback() throws IOException, ParseException {
+		for (String zone : ZONES) {
+			TimeZone.setDefault(TimeZone.getTimeZone(zone));
+			DateTypeAdapter adapter = new DateTypeAdapter();
+			SimpleDateFormat fallback = fallback();
+			
+			//Every quarter hour, so both sides of every transition
+			long from = fallback.parse("01-01-2010").getTime();
+			long to = fallback.parse("01-01-2020").getTime();
+			for (long millis = from; millis < to; millis += 15 * 60000) {
+				assertEquals(zone + " " + millis, fallback.format(new Date(millis)), adapter.format(millis));
+				assertEquals(zone + " " + millis, fallback.format(new Date(millis - 1)), adapter.format(millis - 1));
+			}
+		}
+	}
+	
+	@Test
+	public void madridTransitions() throws IOException, ParseException {
+		TimeZone.setDefault(TimeZone.getTimeZone("Europe/Madrid"));
+		DateTypeAdapter adapter = new DateTypeAdapter();
+		
+		//25-03-2018 01:00 UTC clocks go forward, 28-10-2018 01:00 UTC they go back
+		assertEquals("25-03-2018", adapter.format(1521939600000L - 1));
+		assertEquals("25-03-2018", adapter.format(1521939600000L));
+		assertEquals("28-10-2018", adapter.format(1540688400000L - 1));
+		assertEquals("28-10-2018", adapter.format(1540688400000L));
+		assertEquals("27-10-2018", adapter.format(1540677600000L - 1));
+		assertEquals("28-10-2018", adapter.format(1540677600000L));
+		
+		assertEquals(new Date(1521932400000L), read(adapter, "25-03-2018"));
+		assertEquals(new Date(1522015200000L), read(adapter, "26-03-2018"));
+		assertEquals(new Date(1540677600000L), read(adapter, "28-10-2018"));
+		assertEquals(new Date(1540767600000L), read(adapter, "29-10-2018"));
+	}
+	
+	@Test
+	public void midnightSkippedByDst() throws IOException, ParseException {
+		//Brazil started the DST at midnight, 04-11-2018 begins at 01:00
+		TimeZone.setDefault(TimeZone.getTimeZone("America/Sao_Paulo"));
+		DateTypeAdapter adapter = new DateTypeAdapter();
+		
+		Date date = read(adapter, "04-11-2018");
+		
+		assertEquals(fallback().parse("04-11-2018"), date);
+		assertEquals("04-11-2018", adapter.format(date.getTime()));
+	}
+	
+	@Test
+	public void specialDates() throws IOException, ParseException {
+		TimeZone.setDefault(TimeZone.getTimeZone("Europe/Madrid"));
+		DateTypeAdapter adapter = new DateTypeAdapter();
+		SimpleDateFormat fallback = fallback();
+		
+		String[] values = {"29-02-2000", "29-02-2016", "28-02-1900", "01-03-1900", "31-12-1969", "01-01-1970",
+				"31-12-1999", "01-01-2000", "15-10-1582", "04-10-1582", "01-01-0001", "31-12-9999"};
+		for (String value : values) {
+			assertEquals(value, fallback.parse(value), read(adapter, value));
+			assertEquals(value, value, write(adapter, fallback.parse(value)));
+		}
+	}
+	
+	@Test
+	public void lenientInputGoesThroughTheFallback() throws IOException, ParseException {
+		DateTypeAdapter adapter = new DateTypeAdapter();
+		SimpleDateFormat fallback = fallback();
+		
+		String[] values = {"29-02-2001", "31-04-2018", "00-01-2018", "32-01-2018", "01-13-2018", "1-1-2018", "01-01-18"};
+		for (String value : values) {
+			assertEquals(value, fallback.parse(value), read(adapter, value));
+		}
+	}
+	
+	@Test
+	public void isoDatesWithFractionalSeconds() throws IOException, ParseException {
+		DateTypeAdapter adapter = new DateTypeAdapter();
+		
+		assertEquals(new Date(946728000123L), read(adapter, "20000101T120000.123Z"));
+		assertEquals(new Date(946728000123L), read(adapter, "20000101T130000.123+01:00"));
+		assertEquals(new Date(946728000000L), read(adapter, "20000101T120000Z"));
+		
+		//Like in Gson the lenient pattern takes the extended format first
+		String extended = "2000-01-01T12:00:00.123Z";
+		assertEquals(fallback().parse(extended), read(adapter, extended));
+	}
+	
+	@Test
+	public void malformedInput() throws IOException {
+		DateTypeAdapter adapter = new DateTypeAdapter();
+		
+		String[] values = {"", "today", "ab-cd-efgh", "01/01/2018", "01-01-"};
+		for (String value : values) {
+			try {
+				read(adapter, value);
+				fail("Parsed " + value);
+			} catch (JsonSyntaxException expected) {
+			}
+		}
+	}
+	
+	@Test
+	public void nullIsKept() throws IOException {
+		DateTypeAdapter adapter = new DateTypeAdapter();
+		
+		assertNull(adapter.read(new JsonReader(new StringReader("null"))));
+		assertEquals("null", write(adapter, null));
+	}
+	
+	
+	
+	
+	private static SimpleDateFormat fallback() {
+		return new SimpleDateFormat(DateTypeAdapter.PATTERN, Locale.getDefault());
+	}
+	
+	private static Date read(DateTypeAdapter adapter, String value) throws IOException {
+		return adapter.read(new JsonReader(new StringReader("\"" + value + "\"")));
+	}
+	
+	private static String write(DateTypeAdapter adapter, Date value) throws IOException {
+		StringWriter writer = new StringWriter();
+		adapter.write(new com.google.gson.stream.JsonWriter(writer), value);
+		String json = writer.toString();
+		return json.startsWith("\"") ? json.substring(1, json.length() - 1) : json;
+	}
+	
+}
@@ -0,0 +1,118 @@
+package com.lfyt.mobile.android.webservice;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+	
+	@Test
+	public void smallValuesHaveTheirOwnBucket() {
+		for (int micros = 0; micros < 8; micros++) {
+			assertEquals(micros, LatencyHistogram.bucketOf(micros));
+			assertEquals(micros, LatencyHistogram.upperBoundOf(micros));
+		}
+	}
+	
+	@Test
+	public void powerOfTwoIsSplitInEightBuckets() {
+		assertEquals(8, LatencyHistogram.bucketOf(8));
+		assertEquals(15, LatencyHistogram.bucketOf(15));
+		assertEquals(16, LatencyHistogram.bucketOf(16));
+		assertEquals(16, LatencyHistogram.bucketOf(17));
+		assertEquals(17, LatencyHistogram.upperBoundOf(16));
+		assertEquals(17, LatencyHistogram.bucketOf(18));
+	}
+	
+	@Test
+	public void everyValueIsInsideItsBucket() {
+		int previous = 0;
+		for (long micros = 1; micros < 1 << 20; micros++) {
+			int bucket = LatencyHistogram.bucketOf(micros);
+			assertTrue(bucket == previous || bucket == previous + 1);
+			assertTrue(micros <= LatencyHistogram.upperBoundOf(bucket));
+			assertTrue(micros > LatencyHistogram.upperBoundOf(bucket - 1));
+			
+			//Relative error of the reported bound
+			assertTrue(LatencyHistogram.upperBoundOf(bucket) - micros <= micros / 8);
+			previous = bucket;
+		}
+	}
+	
+	@Test
+	public void largestValueHasABucket() {
+		int bucket = LatencyHistogram.bucketOf(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBoundOf(bucket));
+		
+		new LatencyHistogram().recordNanos(Long.MAX_VALUE);
+	}
+	
+	@Test
+	public void emptySnapshot() {
+		LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+		assertEquals(0, snapshot.getCount());
+		assertEquals(0, snapshot.getMean());
+		assertEquals(0, snapshot.getP50());
+		assertEquals(0, snapshot.getP999());
+		assertEquals(0, snapshot.getMax());
+	}
+	
+	@Test
+	public void percentilesAreUpperBoundsCappedByMax() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int micros = 1; micros <= 100; micros++) {
+			histogram.recordNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+		}
+		
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(100, snapshot.getCount());
+		assertEquals(50, snapshot.getMean());
+		
+		//50 falls in [48, 51], 95 in [88, 95], 99 in [96, 103]
+		assertEquals(51, snapshot.getP50());
+		assertEquals(95, snapshot.getP95());
+		assertEquals(100, snapshot.getP99());
+		assertEquals(100, snapshot.getP999());
+		assertEquals(100, snapshot.getMax());
+	}
+	
+	@Test
+	public void negativeDurationIsRecordedAsZero() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.recordNanos(-5000);
+		
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(1, snapshot.getCount());
+		assertEquals(0, snapshot.getP50());
+		assertEquals(0, snapshot.getMax());
+	}
+	
+	@Test
+	public void concurrentRecordsAreAllCounted() throws InterruptedException {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			final int offset = i;
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int micros = 1; micros <= 10000; micros++) {
+						histogram.recordNanos(TimeUnit.MICROSECONDS.toNanos(micros + offset));
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(40000, snapshot.getCount());
+		assertEquals(10003, snapshot.getMax());
+	}
+	
+}
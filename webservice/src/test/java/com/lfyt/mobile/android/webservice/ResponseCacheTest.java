@@ -0,0 +1,202 @@
+package com.lfyt.mobile.android.webservice;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.List;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+import okio.GzipSink;
+import okio.Okio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class ResponseCacheTest {
+	
+	private static final List<String> HEADERS = Arrays.asList("Accept-Language", "Authorization");
+	
+	
+	@Test
+	public void keyHasTypeMethodUrlAndListedHeaders() {
+		Request request = new Request.Builder().url("http://host/items?page=1").header("Authorization", "a").build();
+		String key = ResponseCache.keyOf(request, String.class, null, HEADERS);
+		
+		assertEquals(key, ResponseCache.keyOf(request.newBuilder().header("User-Agent", "other").build(), String.class, null, HEADERS));
+		assertNotEquals(key, ResponseCache.keyOf(request, Integer.class, null, HEADERS));
+		assertNotEquals(key, ResponseCache.keyOf(request.newBuilder().url("http://host/items?page=2").build(), String.class, null, HEADERS));
+		assertNotEquals(key, ResponseCache.keyOf(request.newBuilder().header("Authorization", "b").build(), String.class, null, HEADERS));
+		assertNotEquals(key, ResponseCache.keyOf(request.newBuilder().header("Accept-Language", "pt").build(), String.class, null, HEADERS));
+		assertNotEquals(key, ResponseCache.keyOf(request.newBuilder().head().build(), String.class, null, HEADERS));
+	}
+	
+	@Test
+	public void partitionIsPartOfTheKey() {
+		Request request = new Request.Builder().url("http://host/items").build();
+		Type type = String.class;
+		
+		assertNotEquals(ResponseCache.keyOf(request, type, "user-1", HEADERS), ResponseCache.keyOf(request, type, "user-2", HEADERS));
+		assertNotEquals(ResponseCache.keyOf(request, type, "user-1", HEADERS), ResponseCache.keyOf(request, type, null, HEADERS));
+	}
+	
+	@Test
+	public void freshEntryIsReturned() {
+		ResponseCache cache = new ResponseCache(1000);
+		Object value = new Object();
+		cache.put("a", "/a", value, 10, 60000);
+		
+		assertEquals(value, cache.get("a"));
+		assertNull(cache.get("b"));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+	
+	@Test
+	public void expiredEntryIsRemoved() throws InterruptedException {
+		ResponseCache cache = new ResponseCache(1000);
+		cache.put("a", "/a", new Object(), 10, 0);
+		Thread.sleep(1);
+		
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.getSize());
+	}
+	
+	@Test
+	public void leastRecentlyUsedIsEvicted() {
+		ResponseCache cache = new ResponseCache(100);
+		cache.put("a", "/a", "a", 40, 60000);
+		cache.put("b", "/b", "b", 40, 60000);
+		cache.get("a");
+		cache.put("c", "/c", "c", 40, 60000);
+		
+		assertEquals("a", cache.get("a"));
+		assertNull(cache.get("b"));
+		assertEquals("c", cache.get("c"));
+		assertEquals(80, cache.getSize());
+		assertEquals(1, cache.getEvictionCount());
+	}
+	
+	@Test
+	public void replacedEntryIsNotCountedTwice() {
+		ResponseCache cache = new ResponseCache(100);
+		cache.put("a", "/a", "a", 40, 60000);
+		cache.put("a", "/a", "b", 30, 60000);
+		
+		assertEquals("b", cache.get("a"));
+		assertEquals(30, cache.getSize());
+	}
+	
+	@Test
+	public void entryHeavierThanTheCacheIsNotKept() {
+		ResponseCache cache = new ResponseCache(100);
+		cache.put("a", "/a", "a", 101, 60000);
+		
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.getSize());
+	}
+	
+	@Test
+	public void trimToSizeEvictsUntilItFits() {
+		ResponseCache cache = new ResponseCache(100);
+		cache.put("a", "/a", "a", 40, 60000);
+		cache.put("b", "/b", "b", 40, 60000);
+		cache.trimToSize(50);
+		
+		assertNull(cache.get("a"));
+		assertEquals("b", cache.get("b"));
+		assertEquals(40, cache.getSize());
+	}
+	
+	@Test
+	public void invalidateRemovesThePathPrefix() {
+		ResponseCache cache = new ResponseCache(1000);
+		cache.put("1", "/users/1", "1", 10, 60000);
+		cache.put("2", "/users/2/items", "2", 10, 60000);
+		cache.put("3", "/items", "3", 10, 60000);
+		cache.invalidate("/users");
+		
+		assertNull(cache.get("1"));
+		assertNull(cache.get("2"));
+		assertEquals("3", cache.get("3"));
+		assertEquals(10, cache.getSize());
+	}
+	
+	@Test
+	public void anotherPartitionEvictsEverything() {
+		ResponseCache cache = new ResponseCache(1000);
+		cache.usePartition("user-1");
+		cache.put("a", "/a", "a", 10, 60000);
+		
+		cache.usePartition(null);
+		cache.usePartition("user-1");
+		assertEquals("a", cache.get("a"));
+		
+		cache.usePartition("user-2");
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.getSize());
+	}
+	
+	@Test
+	public void bodyWithoutCountIsWeightedAsUnknown() {
+		ResponseCache cache = new ResponseCache(ResponseCache.DEFAULT_MAX_BYTES);
+		cache.put("a", "/a", "a", -1, 60000);
+		
+		assertEquals(16 * 1024, cache.getSize());
+	}
+	
+	@Test
+	public void interceptorCountsTheBodyRead() throws IOException {
+		String json = "[" + repeat("{\"id\":1},", 500) + "{\"id\":2}]";
+		Buffer gzip = new Buffer();
+		GzipSink sink = new GzipSink(gzip);
+		Okio.buffer(sink).writeUtf8(json).close();
+		
+		MockWebServer server = new MockWebServer();
+		server.enqueue(new MockResponse().setChunkedBody(json, 128));
+		server.enqueue(new MockResponse().setHeader("Content-Encoding", "gzip").setBody(gzip));
+		server.start();
+		try {
+			OkHttpClient client = new OkHttpClient.Builder()
+					.addInterceptor(new ResponseCache(1000).newInterceptor())
+					.build();
+			RequestTag.Factory factory = new RequestTag.Factory(client);
+			
+			for (int i = 0; i < 2; i++) {
+				okhttp3.Call call = factory.newCall(new Request.Builder().url(server.url("/items")).build());
+				Response response = call.execute();
+				assertEquals(json, response.body().string());
+				assertEquals(json.length(), ResponseCache.bodyBytesOf(call.request()));
+			}
+		} finally {
+			server.shutdown();
+		}
+	}
+	
+	@Test
+	public void requestNotCountedHasNoBodyBytes() {
+		Request request = new Request.Builder().url("http://host/items").tag(RequestTag.class, new RequestTag()).build();
+		
+		assertEquals(-1, ResponseCache.bodyBytesOf(request));
+		assertEquals(-1, ResponseCache.bodyBytesOf(new Request.Builder().url("http://host/items").build()));
+	}
+	
+	
+	
+	
+	private static String repeat(String value, int count) {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			builder.append(value);
+		}
+		return builder.toString();
+	}
+	
+}
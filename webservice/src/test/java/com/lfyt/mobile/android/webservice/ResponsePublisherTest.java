@@ -0,0 +1,194 @@
+package com.lfyt.mobile.android.webservice;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResponsePublisherTest {
+	
+	@Test
+	public void requestFromOnNextFetchesEachPageOnce() {
+		Pages pages = new Pages(3);
+		Recorder recorder = new Recorder(1, 1);
+		pages.subscribe(recorder);
+		pages.respondAll();
+		
+		assertEquals(4, pages.fetches);
+		assertEquals(1, pages.maxPending);
+		assertEquals("[1, 2, 3]", recorder.items.toString());
+		assertTrue(recorder.completed);
+		assertNull(recorder.error);
+	}
+	
+	@Test
+	public void pagesWaitForTheDemand() {
+		Pages pages = new Pages(3);
+		Recorder recorder = new Recorder(2, 0);
+		pages.subscribe(recorder);
+		pages.respondAll();
+		
+		assertEquals(2, pages.fetches);
+		assertEquals("[1, 2]", recorder.items.toString());
+		
+		recorder.subscription.request(5);
+		pages.respondAll();
+		assertEquals(4, pages.fetches);
+		assertEquals("[1, 2, 3]", recorder.items.toString());
+		assertTrue(recorder.completed);
+	}
+	
+	@Test
+	public void requestAfterNextReturnedCallsOnDemand() {
+		Pages pages = new Pages(3);
+		Recorder recorder = new Recorder(1, 0);
+		pages.subscribe(recorder);
+		pages.respondAll();
+		
+		for (int i = 0; i < 3; i++) {
+			recorder.subscription.request(1);
+			pages.respondAll();
+		}
+		assertEquals(4, pages.fetches);
+		assertEquals("[1, 2, 3]", recorder.items.toString());
+		assertTrue(recorder.completed);
+	}
+	
+	@Test
+	public void cancelFromOnNextStopsTheFetches() {
+		Pages pages = new Pages(3);
+		Recorder recorder = new Recorder(Long.MAX_VALUE, 0) {
+			@Override
+			public void onNext(Integer item) {
+				super.onNext(item);
+				subscription.cancel();
+			}
+		};
+		pages.subscribe(recorder);
+		pages.respondAll();
+		
+		assertEquals(1, pages.fetches);
+		assertEquals("[1]", recorder.items.toString());
+		assertTrue(pages.cancelled);
+		assertTrue(!recorder.completed);
+	}
+	
+	@Test
+	public void invalidRequestIsAnError() {
+		Pages pages = new Pages(3);
+		Recorder recorder = new Recorder(0, 0);
+		pages.subscribe(recorder);
+		
+		recorder.subscription.request(0);
+		assertEquals(0, pages.fetches);
+		assertTrue(recorder.error instanceof IllegalArgumentException);
+	}
+	
+	@Test
+	public void secondSubscriberIsRejected() {
+		Pages pages = new Pages(3);
+		pages.subscribe(new Recorder(0, 0));
+		
+		Recorder second = new Recorder(1, 0);
+		pages.subscribe(second);
+		assertTrue(second.error instanceof IllegalStateException);
+		assertEquals(0, pages.fetches);
+	}
+	
+	
+	
+	
+	/**
+	 * Source fetching the next page when more are requested, like publishPages. Fetches are
+	 * answered by the test, in order
+	 */
+	private static class Pages extends ResponsePublisher<Integer> {
+		
+		private final int count;
+		private final ArrayDeque<Integer> pending = new ArrayDeque<>();
+		int fetches;
+		int maxPending;
+		boolean cancelled;
+		
+		Pages(int count) {
+			this.count = count;
+		}
+		
+		@Override
+		protected void onDemand() {
+			fetch();
+		}
+		
+		@Override
+		protected void onCancel() {
+			cancelled = true;
+		}
+		
+		private void fetch() {
+			fetches++;
+			pending.add(fetches);
+			maxPending = Math.max(maxPending, pending.size());
+		}
+		
+		void respondAll() {
+			while( !pending.isEmpty() ){
+				int page = pending.remove();
+				if( page > count ){
+					complete();
+				}
+				else if( next(page) ){
+					fetch();
+				}
+			}
+		}
+	}
+	
+	
+	private static class Recorder implements ResponsePublisher.Subscriber<Integer> {
+		
+		private final long initial;
+		private final long perItem;
+		
+		ResponsePublisher.Subscription subscription;
+		final List<Integer> items = new ArrayList<>();
+		boolean completed;
+		Throwable error;
+		
+		Recorder(long initial, long perItem) {
+			this.initial = initial;
+			this.perItem = perItem;
+		}
+		
+		@Override
+		public void onSubscribe(ResponsePublisher.Subscription subscription) {
+			this.subscription = subscription;
+			if( initial > 0 ){
+				subscription.request(initial);
+			}
+		}
+		
+		@Override
+		public void onNext(Integer item) {
+			items.add(item);
+			if( perItem > 0 ){
+				subscription.request(perItem);
+			}
+		}
+		
+		@Override
+		public void onError(Throwable error) {
+			this.error = error;
+		}
+		
+		@Override
+		public void onComplete() {
+			completed = true;
+		}
+	}
+	
+}
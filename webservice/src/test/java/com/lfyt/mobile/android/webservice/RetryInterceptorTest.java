@@ -0,0 +1,263 @@
+package com.lfyt.mobile.android.webservice;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.internal.http.HttpDate;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class RetryInterceptorTest {
+	
+	private MockWebServer server;
+	
+	
+	@Before
+	public void setUp() throws IOException {
+		server = new MockWebServer();
+		server.start();
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		server.shutdown();
+	}
+	
+	
+	@Test
+	public void unavailableIsRetriedUntilSuccess() throws IOException {
+		server.enqueue(new MockResponse().setResponseCode(503));
+		server.enqueue(new MockResponse().setResponseCode(429));
+		server.enqueue(new MockResponse().setBody("ok"));
+		RetryInterceptor retry = new RetryInterceptor(2, 1, 1000, 0.1);
+		
+		Response response = execute(client(retry), get("/items/12"));
+		
+		assertEquals(200, response.code());
+		assertEquals("ok", response.body().string());
+		assertEquals(3, server.getRequestCount());
+		assertEquals(Long.valueOf(2), retry.getRetriesByEndpoint().get("GET /items/{id}"));
+	}
+	
+	@Test
+	public void lastResponseIsReturnedAfterMaxRetries() throws IOException {
+		for (int i = 0; i < 3; i++) {
+			server.enqueue(new MockResponse().setResponseCode(503));
+		}
+		
+		Response response = execute(client(new RetryInterceptor(2, 1, 1000, 0.1)), get("/items"));
+		
+		assertEquals(503, response.code());
+		assertEquals(3, server.getRequestCount());
+	}
+	
+	@Test
+	public void otherErrorsAreNotRetried() throws IOException {
+		server.enqueue(new MockResponse().setResponseCode(500));
+		
+		Response response = execute(client(new RetryInterceptor(2, 1, 1000, 0.1)), get("/items"));
+		
+		assertEquals(500, response.code());
+		assertEquals(1, server.getRequestCount());
+	}
+	
+	@Test
+	public void nonIdempotentRequestIsNotRetried() throws IOException {
+		server.enqueue(new MockResponse().setResponseCode(503));
+		server.enqueue(new MockResponse().setBody("ok"));
+		RetryInterceptor retry = new RetryInterceptor(2, 1, 1000, 0.1);
+		
+		Request post = new Request.Builder().url(server.url("/items"))
+				.post(RequestBody.create(MediaType.parse("application/json"), "{}"))
+				.build();
+		Response response = execute(client(retry), post);
+		
+		assertEquals(503, response.code());
+		assertEquals(1, server.getRequestCount());
+		assertNull(retry.getRetriesByEndpoint().get("POST /items"));
+	}
+	
+	@Test
+	public void retryAfterSecondsIsHonored() throws IOException {
+		server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "0"));
+		server.enqueue(new MockResponse().setBody("ok"));
+		
+		Response response = execute(client(new RetryInterceptor(2, 1000, 1000, 0.1)), get("/items"));
+		
+		assertEquals(200, response.code());
+		assertEquals(2, server.getRequestCount());
+	}
+	
+	@Test
+	public void retryAfterDateIsHonored() throws IOException {
+		String past = HttpDate.format(new Date(System.currentTimeMillis() - 60000));
+		server.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", past));
+		server.enqueue(new MockResponse().setBody("ok"));
+		
+		Response response = execute(client(new RetryInterceptor(2, 1000, 1000, 0.1)), get("/items"));
+		
+		assertEquals(200, response.code());
+		assertEquals(2, server.getRequestCount());
+	}
+	
+	@Test
+	public void retryAfterOverMaxDelayIsReturned() throws IOException {
+		server.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "120"));
+		server.enqueue(new MockResponse().setBody("ok"));
+		
+		Response response = execute(client(new RetryInterceptor(2, 1, 1000, 0.1)), get("/items"));
+		
+		assertEquals(503, response.code());
+		assertEquals(1, server.getRequestCount());
+	}
+	
+	@Test
+	public void connectFailureIsRetried() throws IOException {
+		AtomicInteger attempts = new AtomicInteger();
+		OkHttpClient client = new OkHttpClient.Builder()
+				.addInterceptor(new RetryInterceptor(2, 1, 1000, 0.1))
+				.addInterceptor(failFirst(attempts, 1))
+				.build();
+		server.enqueue(new MockResponse().setBody("ok"));
+		
+		Response response = execute(client, get("/items"));
+		
+		assertEquals(200, response.code());
+		assertEquals(2, attempts.get());
+	}
+	
+	@Test
+	public void canceledCallIsNotRetried() throws IOException {
+		final AtomicInteger attempts = new AtomicInteger();
+		OkHttpClient client = new OkHttpClient.Builder()
+				.addInterceptor(new RetryInterceptor(2, 1, 1000, 0.1))
+				.addInterceptor(new Interceptor() {
+					@Override
+					public Response intercept(Chain chain) throws IOException {
+						attempts.incrementAndGet();
+						chain.call().cancel();
+						throw new ConnectException("Failed to connect");
+					}
+				})
+				.build();
+		
+		try {
+			execute(client, get("/items"));
+			fail("Canceled call returned a response");
+		} catch (ConnectException expected) {
+		}
+		assertEquals(1, attempts.get());
+	}
+	
+	@Test
+	public void emptyBudgetStopsTheRetries() throws IOException {
+		//No refill, the budget starts with 10 retries
+		RetryInterceptor retry = new RetryInterceptor(1, 1, 1000, 0);
+		OkHttpClient client = client(retry);
+		for (int i = 0; i < 11; i++) {
+			server.enqueue(new MockResponse().setResponseCode(503));
+			server.enqueue(new MockResponse().setResponseCode(503));
+		}
+		
+		for (int i = 0; i < 11; i++) {
+			assertEquals(503, execute(client, get("/items")).code());
+		}
+		
+		assertEquals(21, server.getRequestCount());
+		assertEquals(1, retry.getExhaustedBudgetCount());
+		assertEquals(Long.valueOf(10), retry.getRetriesByEndpoint().get("GET /items"));
+	}
+	
+	@Test
+	public void onlyNetworkRequestsRefillTheBudget() throws IOException {
+		//A token per request, the ten tokens of the start are spent by the first request
+		RetryInterceptor retry = new RetryInterceptor(10, 0, 1000, 1);
+		OkHttpClient client = new OkHttpClient.Builder()
+				.addInterceptor(retry)
+				.addInterceptor(new Interceptor() {
+					@Override
+					public Response intercept(Chain chain) throws IOException {
+						if( chain.request().url().encodedPath().startsWith("/cached") ){
+							return cacheHit(chain.request());
+						}
+						return chain.proceed(chain.request());
+					}
+				})
+				.build();
+		for (int i = 0; i < 14; i++) {
+			server.enqueue(new MockResponse().setResponseCode(503));
+		}
+		
+		execute(client, get("/items"));
+		assertEquals(11, server.getRequestCount());
+		
+		for (int i = 0; i < 5; i++) {
+			execute(client, get("/cached"));
+		}
+		
+		//Its own token pays one retry, the cache hits paid nothing
+		execute(client, get("/items"));
+		assertEquals(13, server.getRequestCount());
+		assertEquals(1, retry.getExhaustedBudgetCount());
+	}
+	
+	
+	
+	
+	private OkHttpClient client(RetryInterceptor retry) {
+		return new OkHttpClient.Builder().addInterceptor(retry).build();
+	}
+	
+	private Request get(String path) {
+		return new Request.Builder().url(server.url(path)).build();
+	}
+	
+	private static Response execute(OkHttpClient client, Request request) throws IOException {
+		Response response = client.newCall(request).execute();
+		if( response.code() != 200 ){
+			response.close();
+		}
+		return response;
+	}
+	
+	private static Interceptor failFirst(final AtomicInteger attempts, final int failures) {
+		return new Interceptor() {
+			@Override
+			public Response intercept(Chain chain) throws IOException {
+				if( attempts.incrementAndGet() <= failures ){
+					throw new ConnectException("Failed to connect");
+				}
+				return chain.proceed(chain.request());
+			}
+		};
+	}
+	
+	private static Response cacheHit(Request request) {
+		return new Response.Builder()
+				.request(request)
+				.protocol(Protocol.HTTP_1_1)
+				.code(200)
+				.message("OK")
+				.body(ResponseBody.create(null, "cached"))
+				.build();
+	}
+	
+}
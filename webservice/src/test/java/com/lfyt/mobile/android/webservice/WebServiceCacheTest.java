@@ -0,0 +1,167 @@
+package com.lfyt.mobile.android.webservice;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class WebServiceCacheTest {
+	
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	
+	private MockWebServer server;
+	private WebServiceCache cache;
+	private final List<String> log = new ArrayList<>();
+	
+	
+	@Before
+	public void setUp() throws IOException {
+		server = new MockWebServer();
+		server.start();
+		cache = new WebServiceCache(folder.newFolder(), 1024 * 1024);
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		server.shutdown();
+		cache.getCache().close();
+	}
+	
+	
+	@Test
+	public void missThenFreshHit() throws IOException {
+		server.enqueue(new MockResponse().setHeader("Cache-Control", "max-age=60").setBody("v1"));
+		OkHttpClient client = client(HttpLogInterceptor.Condition.ALWAYS);
+		
+		assertEquals("v1", get(client, "/items"));
+		assertEquals("v1", get(client, "/items"));
+		
+		assertEquals(1, server.getRequestCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(0, cache.getStaleHitCount());
+	}
+	
+	@Test
+	public void conditionalRequestAnsweredWith304() throws IOException, InterruptedException {
+		server.enqueue(new MockResponse().setHeader("Cache-Control", "no-cache").setHeader("ETag", "\"v1\"").setBody("v1"));
+		server.enqueue(new MockResponse().setResponseCode(304).setHeader("ETag", "\"v1\""));
+		OkHttpClient client = client(HttpLogInterceptor.Condition.ALWAYS);
+		
+		assertEquals("v1", get(client, "/items"));
+		assertEquals("v1", get(client, "/items"));
+		
+		server.takeRequest();
+		assertEquals("\"v1\"", server.takeRequest().getHeader("If-None-Match"));
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getRevalidatedCount());
+		assertEquals(0, cache.getHitCount());
+	}
+	
+	@Test
+	public void staleHitIsRevalidatedInBackground() throws IOException, InterruptedException {
+		cache.staleWhileRevalidate("/items", 60);
+		server.enqueue(new MockResponse().setHeader("Cache-Control", "max-age=0").setHeader("ETag", "\"v1\"").setBody("v1"));
+		server.enqueue(new MockResponse().setResponseCode(304).setHeader("Cache-Control", "max-age=0").setHeader("ETag", "\"v1\""));
+		OkHttpClient client = client(HttpLogInterceptor.Condition.ALWAYS);
+		
+		assertEquals("v1", get(client, "/items"));
+		assertEquals("v1", get(client, "/items"));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getStaleHitCount());
+		
+		server.takeRequest();
+		RecordedRequest revalidation = server.takeRequest(5, TimeUnit.SECONDS);
+		assertNotNull(revalidation);
+		assertEquals("\"v1\"", revalidation.getHeader("If-None-Match"));
+		awaitRevalidated(1);
+	}
+	
+	@Test
+	public void staleMissIsNotLogged() throws IOException {
+		cache.staleWhileRevalidate("/items", 60);
+		server.enqueue(new MockResponse().setBody("v1"));
+		OkHttpClient client = client(HttpLogInterceptor.Condition.FAILED);
+		
+		assertEquals("v1", get(client, "/items"));
+		
+		assertEquals(1, cache.getMissCount());
+		assertTrue(log.toString(), log.isEmpty());
+	}
+	
+	@Test
+	public void staleMissIsLoggedOnce() throws IOException {
+		cache.staleWhileRevalidate("/items", 60);
+		server.enqueue(new MockResponse().setBody("v1"));
+		OkHttpClient client = client(HttpLogInterceptor.Condition.ALWAYS);
+		
+		assertEquals("v1", get(client, "/items"));
+		
+		List<String> responses = new ArrayList<>();
+		for (String line : log) {
+			if( line.startsWith("<-- ") && !line.startsWith("<-- END") ){
+				responses.add(line.substring(0, 7));
+			}
+		}
+		assertEquals("[<-- 200]", responses.toString());
+	}
+	
+	
+	
+	
+	/**
+	 * Client built like the ones of WebServiceModel, the cache interceptor is the last application one
+	 */
+	private OkHttpClient client(HttpLogInterceptor.Condition condition) {
+		HttpLogInterceptor interceptor = new HttpLogInterceptor(new HttpLogInterceptor.Logger() {
+			@Override
+			public void log(String message) {
+				synchronized (log) {
+					log.add(message);
+				}
+			}
+		});
+		interceptor.setLevel(HttpLogInterceptor.Level.URL_ONLY);
+		interceptor.setCondition(condition);
+		
+		OkHttpClient.Builder builder = new OkHttpClient.Builder()
+				.cache(cache.getCache())
+				.addInterceptor(interceptor);
+		OkHttpClient revalidationClient = builder.build();
+		return builder.addInterceptor(cache.newInterceptor(revalidationClient)).build();
+	}
+	
+	private String get(OkHttpClient client, String path) throws IOException {
+		Request request = new Request.Builder().url(server.url(path)).build();
+		try (Response response = client.newCall(request).execute()) {
+			return response.body().string();
+		}
+	}
+	
+	private void awaitRevalidated(long count) {
+		long deadline = System.currentTimeMillis() + 5000;
+		while( cache.getRevalidatedCount() < count && System.currentTimeMillis() < deadline ){
+			Thread.yield();
+		}
+		assertEquals(count, cache.getRevalidatedCount());
+	}
+	
+}
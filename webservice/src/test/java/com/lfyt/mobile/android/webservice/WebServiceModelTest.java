@@ -0,0 +1,185 @@
+package com.lfyt.mobile.android.webservice;
+
+import com.lfyt.mobile.android.livemodel.Event;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import retrofit2.Call;
+import retrofit2.http.GET;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WebServiceModelTest {
+	
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	
+	private MockWebServer server;
+	private ExecutorService callbackExecutor;
+	private ExecutorService mainExecutor;
+	private WebServiceComponent component;
+	
+	
+	@Before
+	public void setUp() throws IOException {
+		server = new MockWebServer();
+		server.start();
+		
+		callbackExecutor = Executors.newSingleThreadExecutor(named("callback"));
+		mainExecutor = Executors.newSingleThreadExecutor(named("ui"));
+		
+		WebServiceConfiguration configuration = new WebServiceConfiguration();
+		configuration.setCallbackExecutor(callbackExecutor);
+		configuration.setMainThreadExecutor(mainExecutor);
+		component = new WebServiceComponent(server.url("/").toString(), configuration);
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		callbackExecutor.shutdownNow();
+		mainExecutor.shutdownNow();
+		server.shutdown();
+	}
+	
+	
+	@Test
+	public void executeSyncPostsEveryEventOnTheMainThreadExecutor() throws Exception {
+		server.enqueue(new MockResponse().setBody("{\"items\":[1,2]}"));
+		ItemsModel model = new ItemsModel(component);
+		
+		Items items = model.executeSync(model.service.items());
+		awaitMainThread();
+		
+		assertEquals(2, items.items.size());
+		assertEquals("[WebServiceRequestExecutedEvent@ui, Items@ui, WebServiceResponseReceivedEvent@ui]", model.events().toString());
+	}
+	
+	@Test
+	public void executeSyncPostsErrorEventsOnTheMainThreadExecutor() throws Exception {
+		server.enqueue(new MockResponse().setResponseCode(500));
+		ItemsModel model = new ItemsModel(component);
+		
+		try {
+			model.executeSync(model.service.items());
+			fail("500 returned a body");
+		} catch (HttpStatusException expected) {
+			assertEquals(500, expected.getCode());
+		}
+		awaitMainThread();
+		
+		assertEquals("[WebServiceRequestExecutedEvent@ui, RequestError@ui, GenericRequestError@ui, WebServiceErrorEvent@ui]", model.events().toString());
+	}
+	
+	@Test
+	public void staleWhileRevalidateMissIsNotLoggedAsFailed() throws Exception {
+		server.enqueue(new MockResponse().setBody("{\"items\":[1,2]}"));
+		WebServiceCache cache = new WebServiceCache(folder.newFolder(), 1024 * 1024).staleWhileRevalidate("/items", 60);
+		WebServiceConfiguration configuration = new WebServiceConfiguration();
+		configuration.setWebServiceCache(cache);
+		WebServiceComponent component = new WebServiceComponent(server.url("/").toString(), configuration);
+		ItemsModel model = new ItemsModel(component, HttpLogInterceptor.Condition.FAILED);
+		
+		Items items = model.executeSync(model.service.items());
+		
+		assertEquals(2, items.items.size());
+		assertEquals(1, cache.getMissCount());
+		assertTrue(model.log().toString(), model.log().isEmpty());
+		cache.getCache().close();
+	}
+	
+	
+	
+	
+	private void awaitMainThread() throws Exception {
+		mainExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+			}
+		}).get(5, TimeUnit.SECONDS);
+	}
+	
+	private static ThreadFactory named(final String name) {
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				return new Thread(runnable, name);
+			}
+		};
+	}
+	
+	
+	public static class Items extends WebServiceResponse {
+		List<Integer> items;
+	}
+	
+	
+	interface ItemsService {
+		
+		@GET("items")
+		Call<Items> items();
+	}
+	
+	
+	static class ItemsModel extends WebServiceModel<Items> {
+		
+		final ItemsService service;
+		private final List<String> events = new ArrayList<>();
+		private final List<String> log = new ArrayList<>();
+		
+		ItemsModel(WebServiceComponent component) {
+			super(new WebServiceStateAPI() {});
+			logLevel = HttpLogInterceptor.Level.DISABLE;
+			service = setupWebService(component, ItemsService.class);
+		}
+		
+		ItemsModel(WebServiceComponent component, HttpLogInterceptor.Condition condition) {
+			super(new WebServiceStateAPI() {});
+			logLevel = HttpLogInterceptor.Level.URL_ONLY;
+			logCondition = condition;
+			service = setupWebService(component, ItemsService.class);
+		}
+		
+		@Override
+		public void log(String message) {
+			synchronized (log) {
+				log.add(message);
+			}
+		}
+		
+		@Override
+		protected void post(Event event) {
+			synchronized (events) {
+				events.add(event.getClass().getSimpleName() + "@" + Thread.currentThread().getName());
+			}
+		}
+		
+		List<String> events() {
+			synchronized (events) {
+				return new ArrayList<>(events);
+			}
+		}
+		
+		List<String> log() {
+			synchronized (log) {
+				return new ArrayList<>(log);
+			}
+		}
+	}
+	
+}